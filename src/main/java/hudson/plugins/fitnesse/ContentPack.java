@@ -0,0 +1,179 @@
+package hudson.plugins.fitnesse;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * Append-only file holding the html content of all the pages of a build. The
+ * offset and length of every page are kept by its
+ * {@link NativePageCounts.Counts}, so that a single page can be read back
+ * without opening one file per page. Pages may be stored gzipped, which is
+ * detected when they are read.
+ * <p>
+ * Several packs may append to the same file, e.g. the recorders of parallel
+ * branches of a build, or a rerun while the build records its results: an
+ * append locks the file, in this JVM and for other processes, from reading
+ * its size to writing the content.
+ */
+class ContentPack implements Closeable {
+	static final String FILE_NAME = "fitnesse-content.pack";
+
+	private static final int GZIP_MAGIC_1 = 0x1f;
+	private static final int GZIP_MAGIC_2 = 0x8b;
+
+	/** Locks taken by the packs of the same file in this JVM, by hash of the file */
+	private static final Object[] APPEND_LOCKS = new Object[64];
+	static {
+		for (int i = 0; i < APPEND_LOCKS.length; i++) {
+			APPEND_LOCKS[i] = new Object();
+		}
+	}
+
+	private final File file;
+	private FileChannel channel;
+
+	ContentPack(File file) {
+		this.file = file;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the offset at which the content was written
+	 */
+	synchronized long append(byte[] content) throws IOException {
+		FileChannel out = openChannel();
+		synchronized (getAppendLock()) {
+			FileLock lock = out.lock();
+			try {
+				long offset = out.size();
+				ByteBuffer buffer = ByteBuffer.wrap(content);
+				while (buffer.hasRemaining()) {
+					out.write(buffer);
+				}
+				return offset;
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Appends all the pages of another pack, e.g. one written on an agent.
+	 *
+	 * @return the offset at which the other pack starts, to be added to the
+	 *         offsets of its pages
+	 */
+	synchronized long append(File otherPack) throws IOException {
+		FileChannel out = openChannel();
+		synchronized (getAppendLock()) {
+			FileLock lock = out.lock();
+			FileChannel in = FileChannel.open(otherPack.toPath(), StandardOpenOption.READ);
+			try {
+				long offset = out.size();
+				long size = in.size();
+				long position = 0;
+				while (position < size) {
+					position += in.transferTo(position, size - position, out);
+				}
+				return offset;
+			} finally {
+				in.close();
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * @return the lock of the file in this JVM, a file lock being held by the
+	 *         whole JVM and refused to a second channel of it
+	 */
+	private Object getAppendLock() {
+		return APPEND_LOCKS[(file.getAbsoluteFile().hashCode() & Integer.MAX_VALUE) % APPEND_LOCKS.length];
+	}
+
+	private FileChannel openChannel() throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+		}
+		return channel;
+	}
+
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * @return whether the content stored at the given offset is gzipped
+	 */
+	static boolean isGzipped(String packFile, long offset) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(packFile, "r");
+		try {
+			randomAccessFile.seek(offset);
+			return randomAccessFile.read() == GZIP_MAGIC_1 && randomAccessFile.read() == GZIP_MAGIC_2;
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Copies stored content as is, without decompressing it, letting the
+	 * operating system move the bytes when the target allows it.
+	 */
+	static void transferTo(String file, long offset, long length, WritableByteChannel target) throws IOException {
+		FileChannel in = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		try {
+			long position = offset;
+			long end = offset + length;
+			while (position < end) {
+				long transferred = in.transferTo(position, end - position, target);
+				if (transferred <= 0)
+					throw new EOFException("Content of " + file + " ends before " + end);
+				position += transferred;
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Opens the content of a single page, decompressing it if it was stored
+	 * gzipped.
+	 */
+	static InputStream open(String packFile, long offset, int length) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(packFile, "r");
+		try {
+			randomAccessFile.seek(offset);
+			InputStream in = new BufferedInputStream(new BoundedInputStream(
+					Channels.newInputStream(randomAccessFile.getChannel()), length));
+			in.mark(2);
+			boolean gzipped = in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+			in.reset();
+			return gzipped ? new GZIPInputStream(in) : in;
+		} catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The counts of many pages kept column by column in primitive arrays, the
+ * strings (page names, dates and content files) in a table of their own, so
+ * that a suite of thousands of pages costs a few arrays instead of one
+ * {@link Counts} and its strings per page. {@link Counts} are only created
+ * when a row is asked for.
+ */
+final class CountsTable implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int NONE = -1;
+
+	private final String[] strings;
+	private final int[] page;
+	private final int[] resultsDate;
+	private final int[] right;
+	private final int[] wrong;
+	private final int[] ignored;
+	private final int[] exceptions;
+	private final int[] duration;
+	private final int[] contentFile;
+	private final long[] contentOffset;
+	private final int[] contentLength;
+
+	CountsTable(Collection<Counts> rows) {
+		int size = rows.size();
+		page = new int[size];
+		resultsDate = new int[size];
+		right = new int[size];
+		wrong = new int[size];
+		ignored = new int[size];
+		exceptions = new int[size];
+		duration = new int[size];
+		contentFile = new int[size];
+		contentOffset = new long[size];
+		contentLength = new int[size];
+
+		List<String> stringList = new ArrayList<String>();
+		Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+		int row = 0;
+		for (Counts counts : rows) {
+			page[row] = indexOf(counts.page, stringList, stringIndex);
+			resultsDate[row] = indexOf(counts.resultsDate, stringList, stringIndex);
+			right[row] = counts.right;
+			wrong[row] = counts.wrong;
+			ignored[row] = counts.ignored;
+			exceptions[row] = counts.exceptions;
+			duration[row] = counts.duration;
+			contentFile[row] = indexOf(counts.contentFile, stringList, stringIndex);
+			contentOffset[row] = counts.isContentPacked() ? counts.contentOffset.longValue() : NONE;
+			contentLength[row] = counts.contentLength;
+			row++;
+		}
+		strings = stringList.toArray(new String[stringList.size()]);
+	}
+
+	private CountsTable(DataInput in, PageNamePool pool) throws IOException {
+		strings = new String[in.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = pool.intern(in.readUTF());
+		}
+		int size = in.readInt();
+		page = readInts(in, size);
+		resultsDate = readInts(in, size);
+		right = readInts(in, size);
+		wrong = readInts(in, size);
+		ignored = readInts(in, size);
+		exceptions = readInts(in, size);
+		duration = readInts(in, size);
+		contentFile = readInts(in, size);
+		contentOffset = new long[size];
+		for (int row = 0; row < size; row++) {
+			contentOffset[row] = in.readLong();
+		}
+		contentLength = readInts(in, size);
+	}
+
+	/**
+	 * Reads a table written by {@link #writeTo(DataOutput)}, taking its
+	 * strings from the given pool.
+	 */
+	static CountsTable readFrom(DataInput in, PageNamePool pool) throws IOException {
+		return new CountsTable(in, pool);
+	}
+
+	/**
+	 * Writes the table column by column.
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.writeInt(strings.length);
+		for (String string : strings) {
+			out.writeUTF(string);
+		}
+		out.writeInt(size());
+		writeInts(out, page);
+		writeInts(out, resultsDate);
+		writeInts(out, right);
+		writeInts(out, wrong);
+		writeInts(out, ignored);
+		writeInts(out, exceptions);
+		writeInts(out, duration);
+		writeInts(out, contentFile);
+		for (long offset : contentOffset) {
+			out.writeLong(offset);
+		}
+		writeInts(out, contentLength);
+	}
+
+	private static int[] readInts(DataInput in, int size) throws IOException {
+		int[] column = new int[size];
+		for (int row = 0; row < size; row++) {
+			column[row] = in.readInt();
+		}
+		return column;
+	}
+
+	private static void writeInts(DataOutput out, int[] column) throws IOException {
+		for (int value : column) {
+			out.writeInt(value);
+		}
+	}
+
+	private static int indexOf(String value, List<String> stringList, Map<String, Integer> stringIndex) {
+		if (value == null)
+			return NONE;
+		Integer index = stringIndex.get(value);
+		if (index == null) {
+			index = stringList.size();
+			stringList.add(value);
+			stringIndex.put(value, index);
+		}
+		return index;
+	}
+
+	private String string(int index) {
+		return index == NONE ? null : strings[index];
+	}
+
+	int size() {
+		return page.length;
+	}
+
+	/**
+	 * @return a new {@link Counts} of the given row, sharing the strings of the
+	 *         table
+	 */
+	Counts get(int row) {
+		Long offset = contentOffset[row] == NONE ? null : Long.valueOf(contentOffset[row]);
+		return new Counts(string(page[row]), string(resultsDate[row]), right[row], wrong[row], ignored[row],
+				exceptions[row], duration[row], string(contentFile[row]), offset, contentLength[row]);
+	}
+
+	List<Counts> toList() {
+		List<Counts> rows = new ArrayList<Counts>(size());
+		for (int row = 0; row < size(); row++) {
+			rows.add(get(row));
+		}
+		return rows;
+	}
+
+	@Override
+	public String toString() {
+		return size() + " pages, " + strings.length + " strings";
+	}
+}
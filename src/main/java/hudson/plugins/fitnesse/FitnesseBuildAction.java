@@ -3,15 +3,21 @@ package hudson.plugins.fitnesse;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
 import hudson.model.Action;
+import hudson.model.EnvironmentContributingAction;
 import hudson.model.InvisibleAction;
 
 /**
  * Used to store part of the project config with the build to which it relates
  * so that a-links can be constructed to fitnesse hosts that are already running 
  * (when fitnesse was not started by the build). 
+ * The port is also given to the following build steps as FITNESSE_PORT.
  */
-public class FitnesseBuildAction extends InvisibleAction implements Action {
+public class FitnesseBuildAction extends InvisibleAction implements Action, EnvironmentContributingAction {
+
+	public static final String FITNESSE_PORT_VARIABLE = "FITNESSE_PORT";
 
 	public static final FitnesseBuildAction NULL_ACTION = new FitnesseBuildAction(true, null, 0);
 	
@@ -31,6 +37,18 @@ public class FitnesseBuildAction extends InvisibleAction implements Action {
         this.enableSsl = enableSsl;
     }
 
+	public int getFitnessePort() {
+		return fitnessePort;
+	}
+
+	/**
+	 * {@link EnvironmentContributingAction}
+	 */
+	public void buildEnvVars(AbstractBuild<?, ?> build, EnvVars env) {
+		if (fitnessePort > 0)
+			env.put(FITNESSE_PORT_VARIABLE, Integer.toString(fitnessePort));
+	}
+
     public String getLinkFor(String fitnessePage) {
 		return getLinkFor(fitnessePage, null, fitnessePage);
 	}
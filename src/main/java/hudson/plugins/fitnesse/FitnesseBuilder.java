@@ -47,14 +47,19 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
     public static final String PARTITION_COUNT = "fitnessePartitionCount";
     public static final String PARTITION_INDEX = "fitnessePartitionIndex";
     public static final String PARTITION_INDEX_FILE = "fitnessePartitionIndexFile";
+    public static final String PARTITION_RUN_ALL = "fitnessePartitionRunAll";
+    public static final String PARTITION_BALANCE = "fitnessePartitionBalance";
     public static final String TARGET_IS_SUITE = "fitnesseTargetIsSuite";
     public static final String PATH_TO_RESULTS = "fitnessePathToXmlResultsOut";
     public static final String PATH_TO_JUNIT_RESULTS = "fitnessePathToJunitResultsOut";
     public static final String HTTP_TIMEOUT = "fitnesseHttpTimeout";
     public static final String TEST_TIMEOUT = "fitnesseTestTimeout";
+    public static final String STARTUP_TIMEOUT = "fitnesseStartupTimeout";
     public static final String JAVA_WORKING_DIRECTORY = "fitnesseJavaWorkingDirectory";
+    public static final String SERVER_POOL = "fitnesseServerPool";
 
 	static final int _URL_READ_TIMEOUT_MILLIS = 60 * 1000;
+	static final int _STARTUP_TIMEOUT_MILLIS = 30 * 1000;
 	static final String _LOCALHOST = "localhost";
 	static final String _HOSTNAME_SLAVE_PROPERTY = "HOST_NAME";
 
@@ -97,6 +102,16 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
 		return Boolean.parseBoolean(getOption(START_FITNESSE, "False"));
 	}
 
+	/**
+	 * referenced in config.jelly
+	 * 
+	 * @return whether the FitNesse server started is kept running on the node
+	 *         for the next builds, see {@link FitnesseServerPool}
+	 */
+	public boolean getFitnesseServerPool() {
+		return Boolean.parseBoolean(getOption(SERVER_POOL, "False"));
+	}
+
 	/**
 	 * referenced in config.jelly
 	 */
@@ -181,6 +196,22 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
 		return getOption(FITNESSE_PORT_REMOTE, getOption(FITNESSE_PORT_LOCAL, getOption(FITNESSE_PORT, "-1")));
 	}
 
+	/**
+	 * referenced in config.jelly, empty when a free port is found for every
+	 * build
+	 */
+	public String getFitnessePortLocal() {
+		return isAllocatingFitnessePort() ? "" : getFitnessePort();
+	}
+
+	/**
+	 * @return true if FitNesse is started by the build without a port, so
+	 *         that every build runs it on a free port of its own
+	 */
+	public boolean isAllocatingFitnessePort() {
+		return getFitnesseStart() && getOption(FITNESSE_PORT_LOCAL, getOption(FITNESSE_PORT, "")).length() == 0;
+	}
+
 	public int getFitnessePort(EnvVars environment) {
 		return Integer.parseInt(getOption(FITNESSE_PORT_REMOTE,
 				getOption(FITNESSE_PORT_LOCAL, getOption(FITNESSE_PORT, "-1", environment), environment), environment));
@@ -283,6 +314,36 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
         return getOption(PARTITION_INDEX_FILE, "");
     }
 
+    /**
+     * referenced in config.jelly
+     */
+    public boolean getFitnessePartitionRunAll() {
+        return Boolean.parseBoolean(getOption(PARTITION_RUN_ALL, "False"));
+    }
+
+    /**
+     * referenced in config.jelly
+     */
+    public boolean getFitnessePartitionBalance() {
+        return Boolean.parseBoolean(getOption(PARTITION_BALANCE, "False"));
+    }
+
+    /**
+     * @return whether the partitions are balanced by the durations of the
+     *         pages in previous builds
+     */
+    public boolean isBalancingPartitions() {
+        return getFitnessePartitionEnabled() && getFitnessePartitionCount() > 1 && getFitnessePartitionBalance();
+    }
+
+    /**
+     * @return whether all the partitions are run at the same time by this
+     *         step, instead of the one given by the partition index
+     */
+    public boolean isRunningAllPartitions() {
+        return getFitnessePartitionEnabled() && getFitnessePartitionCount() > 1 && getFitnessePartitionRunAll();
+    }
+
 	/**
 	 * referenced in config.jelly
 	 */
@@ -327,6 +388,17 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
 		return Integer.parseInt(getOption(TEST_TIMEOUT, String.valueOf(_URL_READ_TIMEOUT_MILLIS), environment));
 	}
 
+	/**
+	 * referenced in config.jelly
+	 */
+	public int getFitnesseStartupTimeout() {
+		return Integer.parseInt(getOption(STARTUP_TIMEOUT, String.valueOf(_STARTUP_TIMEOUT_MILLIS)));
+	}
+
+	public int getFitnesseStartupTimeout(EnvVars environment) {
+		return Integer.parseInt(getOption(STARTUP_TIMEOUT, String.valueOf(_STARTUP_TIMEOUT_MILLIS), environment));
+	}
+
 	/**
 	 * {@link Builder}
 	 */
@@ -337,6 +409,9 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
 		optionsWithoutPassword.putAll(options);
 		optionsWithoutPassword.remove("fitnessePassword");
 		listener.getLogger().println(getClass().getName() + ": " + optionsWithoutPassword);
+		Computer computer = workspace.toComputer();
+		build.addOrReplaceAction(new FitnesseRerunAction(options, computer == null ? "" : computer.getName(),
+				workspace.getRemote()));
 		FitnesseExecutor fitnesseExecutor = new FitnesseExecutor(this, listener, build.getEnvironment(listener));
 		fitnesseExecutor.execute(launcher, workspace, build);
 	}
@@ -377,6 +452,13 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
 			return FormValidation.ok();
 		}
 
+		public FormValidation doCheckFitnessePortLocal(@QueryParameter String value) throws IOException,
+				ServletException {
+			if (value.length() == 0)
+				return FormValidation.ok("A free port will be used by every build.");
+			return doCheckFitnessePort(value);
+		}
+
 		public FormValidation doCheckFitnesseJdk(@QueryParameter String value) throws IOException, ServletException {
 			if (value.length() == 0)
 				return FormValidation.ok("Defaults to project's JDK");
@@ -466,6 +548,20 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
 			return FormValidation.ok();
 		}
 
+		public FormValidation doCheckFitnesseStartupTimeout(@QueryParameter String value) throws IOException,
+				ServletException {
+			if (value.length() == 0)
+				return FormValidation.ok("Default startup timeout " + _STARTUP_TIMEOUT_MILLIS + "ms will be used.");
+			try {
+				if (Integer.parseInt(value) < 0)
+					return FormValidation.error("Startup timeout must be a positive integer.");
+			} catch (NumberFormatException e) {
+				if (!value.startsWith("$"))
+					return FormValidation.error("Startup timeout must be a number.");
+			}
+			return FormValidation.ok();
+		}
+
 		public FormValidation doCheckFitnessePathToXmlResultsOut(@QueryParameter String value) throws IOException,
 				ServletException {
 			if (value.length() == 0)
@@ -512,12 +608,12 @@ public class FitnesseBuilder extends Builder implements SimpleBuildStep, Seriali
                 return newFitnesseBuilder(
                         startFitnesseValue,
                         collectFormData(formData, new String[]{FITNESSE_JDK, JAVA_OPTS, JAVA_WORKING_DIRECTORY, PATH_TO_JAR,
-                                PATH_TO_ROOT, FITNESSE_PORT_LOCAL, TARGET_PAGE, PARTITION_ENABLED, PARTITION_COUNT, PARTITION_INDEX, PARTITION_INDEX_FILE, HTTP_TIMEOUT, TEST_TIMEOUT,
-                                PATH_TO_RESULTS, PATH_TO_JUNIT_RESULTS, FITNESSE_ADDITIONAL_OPTIONS}));
+                                PATH_TO_ROOT, FITNESSE_PORT_LOCAL, TARGET_PAGE, PARTITION_ENABLED, PARTITION_COUNT, PARTITION_INDEX, PARTITION_INDEX_FILE, PARTITION_RUN_ALL, PARTITION_BALANCE, HTTP_TIMEOUT, TEST_TIMEOUT,
+                                PATH_TO_RESULTS, PATH_TO_JUNIT_RESULTS, FITNESSE_ADDITIONAL_OPTIONS, SERVER_POOL, STARTUP_TIMEOUT}));
             }
             return newFitnesseBuilder(
                     startFitnesseValue,
-                    collectFormData(formData, new String[]{FITNESSE_HOST, FITNESSE_PORT_REMOTE, FITNESSE_USERNAME, FITNESSE_PASSWORD, FITNESSE_ENABLE_SSL, TARGET_PAGE, PARTITION_ENABLED, PARTITION_COUNT, PARTITION_INDEX, PARTITION_INDEX_FILE,
+                    collectFormData(formData, new String[]{FITNESSE_HOST, FITNESSE_PORT_REMOTE, FITNESSE_USERNAME, FITNESSE_PASSWORD, FITNESSE_ENABLE_SSL, TARGET_PAGE, PARTITION_ENABLED, PARTITION_COUNT, PARTITION_INDEX, PARTITION_INDEX_FILE, PARTITION_RUN_ALL, PARTITION_BALANCE,
                             HTTP_TIMEOUT, TEST_TIMEOUT, PATH_TO_RESULTS, PATH_TO_JUNIT_RESULTS}));
         }
 
@@ -5,19 +5,36 @@ import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Launcher.ProcStarter;
 import hudson.Proc;
+import hudson.console.LineTransformationOutputStream;
 import hudson.model.*;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import jenkins.model.Jenkins;
 import jenkins.security.MasterToSlaveCallable;
 
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,15 +46,32 @@ public class FitnesseExecutor implements Serializable {
         private static final long serialVersionUID = 691934300658830569L;
 
 	private static final int SLEEP_MILLIS = 1000;
-	private static final int STARTUP_TIMEOUT_MILLIS = 30 * 1000;
 	private static final int READ_PAGE_TIMEOUT = 10 * 1000;
+	/** Waits between the attempts to connect to a starting server, doubled every time */
+	private static final int FIRST_PROBE_MILLIS = 5;
+	private static final int MAX_PROBE_MILLIS = 500;
+	private static final int CONNECT_TIMEOUT_MILLIS = 500;
+	/** Line written by FitNesse once it accepts connections */
+	static final Pattern STARTED_LINE = Pattern.compile("(?i)listening on port|starting fitnesse on port|fitnesse .*started");
 
 	private final FitnesseBuilder builder;
 	private final EnvVars envVars;
 	private final TaskListener listener;
 	private transient PrintStream logger;
 
-	private String fitnesseTestId = null;
+	/**
+	 * Ids of the tests running on the server, to stop them when the build is
+	 * aborted. They are recorded by the copy of the executor reading the
+	 * results on the node, which stops them itself when interrupted.
+	 */
+	private final Set<String> fitnesseTestIds = Collections.synchronizedSet(new LinkedHashSet<String>());
+	/** The partition index file written for this build, if the partitions are balanced */
+	private String partitionIndexFile = null;
+	private transient PartitionBalancer.Partitioning partitioning;
+	/** Counted down when the started FitNesse writes {@link #STARTED_LINE} */
+	private transient CountDownLatch startedLine;
+	/** The free port found for the FitNesse of the build, 0 for the configured port */
+	private int fitnessePort = 0;
 	private static volatile String fitnessePathToJunitResults = null;
 
 	public synchronized static void setFitnessePathToJunitResults(String valuePassed) {
@@ -56,11 +90,23 @@ public class FitnesseExecutor implements Serializable {
 
 	public boolean execute(Launcher launcher, FilePath workspace, Run<?, ?> build) throws InterruptedException, IOException {
 		Proc fitnesseProc = null;
+		FitnesseServerPool.Lease pooledServer = null;
+		boolean healthy = false;
 		try {
+			if (builder.getFitnesseStart() && builder.getFitnesseServerPool()) {
+				pooledServer = acquirePooledFitnesse(workspace, launcher);
+			}
+			if (builder.isAllocatingFitnessePort()) {
+				allocateFitnessePort(launcher, pooledServer);
+			}
 			build.addAction(getFitnesseBuildAction(build));
 			if (builder.getFitnesseStart()) {
-				fitnesseProc = startFitnesse(workspace, launcher);
-				if (!fitnesseProc.isAlive() || !isFitnesseStarted(getFitnessePage(build, false))) {
+				if (pooledServer == null) {
+					fitnesseProc = startFitnesse(workspace, launcher);
+					if (!fitnesseProc.isAlive() || !isFitnesseStarted(getFitnessePage(build, false))) {
+						return false;
+					}
+				} else if (!isFitnesseStarted(getFitnessePage(build, false))) {
 					return false;
 				}
 			}
@@ -81,13 +127,38 @@ public class FitnesseExecutor implements Serializable {
 
                         // Execute fitnesse and capture the fitnesse testing results
 			FilePath resultsFilePath = getFilePath(logger, workspace, builder.getFitnessePathToXmlResultsOut(envVars));
+			if (builder.isBalancingPartitions()) {
+				writeBalancedPartitions(build, workspace);
+			}
+			if (builder.isRunningAllPartitions()) {
+				List<FilePath> partitionFilePaths = runAllPartitions(launcher, build, resultsFilePath);
+				if (junitFilePath != null) {
+					for (int i = 0; i < partitionFilePaths.size(); i++) {
+						FilePath junitPartitionFilePath = getPartitionFilePath(junitFilePath, i);
+						try {
+							logger.println("Attempt to convert " + partitionFilePaths.get(i) + " to " + junitPartitionFilePath);
+							ConvertReport.generateJunitResult(partitionFilePaths.get(i), junitPartitionFilePath);
+						} catch (Exception e) {
+							e.printStackTrace(logger);
+						}
+					}
+				}
+				healthy = true;
+				return true;
+			}
+
                         // logger.println("Results file path " + resultsFilePath);
                         URL fitnessePageURL = getFitnessePage(build, true);
                         // logger.println("Fitnesse page URL " + fitnessePageURL.toString());
+			long start = System.currentTimeMillis();
                         boolean interrupted = launcher.getChannel().call(new ReadAndWriteFitnesseResults(fitnessePageURL, resultsFilePath));
                         if (interrupted) {
                           throw new InterruptedException("Call for requested fitnesse page was interrupted");
                         }
+			if (partitioning != null) {
+				logger.printf("Partition %d: predicted %dms, actual %dms%n", builder.getFitnessePartitionIndex(),
+						partitioning.getLoad(builder.getFitnessePartitionIndex()), System.currentTimeMillis() - start);
+			}
 
                         // Produce the fitnesse junit result xml file if specified
                         if (junitFilePath != null) {
@@ -100,6 +171,7 @@ public class FitnesseExecutor implements Serializable {
                              }
                         }
 
+			healthy = true;
 			return true;
 		} catch (Throwable t) {
 			t.printStackTrace(logger);
@@ -113,19 +185,234 @@ public class FitnesseExecutor implements Serializable {
 			return false;
 		} finally {
 			killProc(fitnesseProc);
+			releasePooledFitnesse(launcher, pooledServer, healthy);
 		}
 	}
 
+	/**
+	 * Takes a FitNesse server from the pool of the node, started by the pool
+	 * unless it already holds one for the same configuration.
+	 *
+	 * @return null if the pool can't provide a server
+	 */
+	private FitnesseServerPool.Lease acquirePooledFitnesse(FilePath workingDirectory, Launcher launcher)
+			throws IOException, InterruptedException {
+		List<String> cmd = getJavaCmd(workingDirectory);
+		String javaWorkingDirectory = getFilePath(workingDirectory, builder.getFitnesseJavaWorkingDirectory())
+				.getRemote();
+		String key = FitnesseServerPool.getServerKey(cmd, javaWorkingDirectory);
+		int port = builder.isAllocatingFitnessePort() ? 0 : builder.getFitnessePort(envVars);
+		FitnesseServerPool.Lease lease = launcher.getChannel().call(
+				new FitnesseServerPool.Acquire(key, cmd, port, javaWorkingDirectory));
+		if (lease == null) {
+			logger.println("Fitnesse server of the pool is used on another port or to be stopped, starting a new instance");
+		} else if (lease.reused) {
+			logger.println("Reusing Fitnesse server of the pool, logging to " + lease.log);
+		} else {
+			logger.println("Starting new Fitnesse instance for the pool, logging to " + lease.log);
+		}
+		return lease;
+	}
+
+	/**
+	 * Uses the port of the server from the pool, or a free port of the node,
+	 * for the FitNesse of the build and gives it to the following build steps.
+	 */
+	private void allocateFitnessePort(Launcher launcher, FitnesseServerPool.Lease pooledServer)
+			throws IOException, InterruptedException {
+		fitnessePort = pooledServer != null ? pooledServer.port : launcher.getChannel().call(new FindFreePort());
+		envVars.put(FitnesseBuildAction.FITNESSE_PORT_VARIABLE, Integer.toString(fitnessePort));
+		logger.println("Fitnesse server port: " + fitnessePort);
+	}
+
+	/**
+	 * @return the port found for the build, or the configured one
+	 */
+	/* package for test */int getFitnessePort() {
+		return fitnessePort > 0 ? fitnessePort : builder.getFitnessePort(envVars);
+	}
+
+	/**
+	 * @return a port no server is listening on, which the operating system
+	 *         does not give again right away
+	 */
+	static int findFreePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static final class FindFreePort extends MasterToSlaveCallable<Integer, IOException> {
+		private static final long serialVersionUID = 1L;
+
+		public Integer call() throws IOException {
+			return findFreePort();
+		}
+	}
+
+	/**
+	 * Gives the server back to the pool, which stops it if the build did not
+	 * complete normally.
+	 */
+	private void releasePooledFitnesse(Launcher launcher, FitnesseServerPool.Lease lease, boolean healthy) {
+		if (lease == null)
+			return;
+		try {
+			launcher.getChannel().call(new FitnesseServerPool.Release(lease.key, healthy));
+		} catch (Exception e) {
+			e.printStackTrace(logger);
+		}
+	}
+
+	/**
+	 * Runs the given pages again, each into its own results file. The server
+	 * of the pool is used when the builder starts its servers from the pool,
+	 * as by {@link #execute}. Otherwise a server already answering on the
+	 * configured port is used as it is, or one is started for the pages, on a
+	 * free port if none is configured, and stopped afterwards.
+	 */
+	public boolean rerun(Launcher launcher, FilePath workspace, Run<?, ?> build, List<String> pages,
+			List<FilePath> resultsFiles) throws InterruptedException, IOException {
+		Proc fitnesseProc = null;
+		FitnesseServerPool.Lease pooledServer = null;
+		boolean healthy = false;
+		try {
+			if (builder.getFitnesseStart() && builder.getFitnesseServerPool()) {
+				pooledServer = acquirePooledFitnesse(workspace, launcher);
+			}
+			if (builder.isAllocatingFitnessePort()) {
+				allocateFitnessePort(launcher, pooledServer);
+			}
+			URL fitnesseURL = getFitnessePage(build, false);
+			if (pooledServer != null) {
+				if (!isFitnesseStarted(fitnesseURL)) {
+					return false;
+				}
+			} else if (builder.getFitnesseStart() && !respondsToRequest(fitnesseURL)) {
+				fitnesseProc = startFitnesse(workspace, launcher);
+				if (!fitnesseProc.isAlive() || !isFitnesseStarted(fitnesseURL)) {
+					return false;
+				}
+			} else {
+				logger.println("Using Fitnesse server running on " + fitnesseURL);
+			}
+
+			for (int i = 0; i < pages.size(); i++) {
+				URL pageURL = getFitnessePageToRerun(build, pages.get(i));
+				boolean interrupted = launcher.getChannel().call(
+						new ReadAndWriteFitnesseResults(pageURL, resultsFiles.get(i)));
+				if (interrupted) {
+					throw new InterruptedException("Call for requested fitnesse page was interrupted");
+				}
+			}
+			healthy = true;
+			return true;
+		} finally {
+			killProc(fitnesseProc);
+			releasePooledFitnesse(launcher, pooledServer, healthy);
+		}
+	}
+
+	/**
+	 * Runs all the partitions of the suite at the same time against the same
+	 * server, each into a results file of its own named by
+	 * {@link #getPartitionFileName(String, String)}. They are merged by
+	 * {@link FitnesseResultsRecorder}.
+	 *
+	 * @return the results file of every partition
+	 */
+	private List<FilePath> runAllPartitions(Launcher launcher, Run<?, ?> build, FilePath resultsFilePath)
+			throws IOException, InterruptedException {
+		// the recorder prefers the results file of a single partition to the partition files
+		if (resultsFilePath.delete())
+			logger.println("Deleted results file of a previous build " + resultsFilePath);
+		FilePath resultsDirectory = resultsFilePath.getParent();
+		if (resultsDirectory != null && resultsDirectory.exists()) {
+			// a previous build may have run more partitions
+			for (FilePath oldFilePath : resultsDirectory.list(getPartitionFileName(resultsFilePath.getName(), "*"))) {
+				oldFilePath.delete();
+			}
+		}
+
+		int partitionCount = builder.getFitnessePartitionCount();
+		List<URL> pageURLs = new ArrayList<URL>();
+		List<FilePath> partitionFilePaths = new ArrayList<FilePath>();
+		for (int i = 0; i < partitionCount; i++) {
+			pageURLs.add(getFitnessePartitionPage(build, i));
+			partitionFilePaths.add(getPartitionFilePath(resultsFilePath, i));
+		}
+		logger.println("Running " + partitionCount + " partitions in parallel");
+		long start = System.currentTimeMillis();
+		boolean interrupted = launcher.getChannel().call(
+				new ReadAndWriteFitnessePartitions(pageURLs, partitionFilePaths));
+		if (interrupted) {
+			throw new InterruptedException("Call for requested fitnesse page was interrupted");
+		}
+		if (partitioning != null) {
+			logger.printf("Makespan of the partitions: predicted %dms, actual %dms%n", partitioning.getMakespan(),
+					System.currentTimeMillis() - start);
+		}
+		return partitionFilePaths;
+	}
+
+	/**
+	 * Writes the partition index file from the durations of the pages in the
+	 * previous builds, see {@link PartitionBalancer}. The file is written to
+	 * the working directory of the FitNesse server started for the build, so
+	 * it is only done for such a server.
+	 */
+	private void writeBalancedPartitions(Run<?, ?> build, FilePath workspace) throws IOException,
+			InterruptedException {
+		if (!builder.getFitnesseStart()) {
+			logger.println("Partitions are only balanced for a Fitnesse server started by the build");
+			return;
+		}
+		Map<String, Long> durations = PartitionBalancer.averageDurations(build, PartitionBalancer.HISTORY_BUILDS);
+		if (durations.isEmpty()) {
+			logger.println("No durations of pages in previous builds to balance the partitions with");
+			return;
+		}
+
+		partitioning = PartitionBalancer.partition(durations, builder.getFitnessePartitionCount());
+		String indexFileName = builder.getFitnessePartitionIndexFile();
+		if (indexFileName.length() == 0)
+			indexFileName = PartitionBalancer.DEFAULT_INDEX_FILE;
+		FilePath indexFile = getFilePath(workspace, builder.getFitnesseJavaWorkingDirectory()).child(indexFileName);
+		indexFile.write(partitioning.toIndexFile(), "UTF-8");
+		partitionIndexFile = indexFileName;
+		logger.println("Balanced partitions written to " + indexFile + ": " + partitioning);
+	}
+
+	/**
+	 * @return the name of the file of a partition, e.g.
+	 *         <tt>fitnesse-results.partition-2.xml</tt> for
+	 *         <tt>fitnesse-results.xml</tt>
+	 */
+	static String getPartitionFileName(String fileName, String partition) {
+		int extension = fileName.lastIndexOf('.');
+		if (extension <= 0)
+			return fileName + ".partition-" + partition;
+		return fileName.substring(0, extension) + ".partition-" + partition + fileName.substring(extension);
+	}
+
+	static FilePath getPartitionFilePath(FilePath filePath, int partitionIndex) {
+		return filePath.getParent().child(getPartitionFileName(filePath.getName(), String.valueOf(partitionIndex)));
+	}
+
 	private FitnesseBuildAction getFitnesseBuildAction(Run<?, ?> build) throws IOException, InterruptedException {
 		return new FitnesseBuildAction(builder.getFitnesseStart(), builder.getFitnesseHost(build, envVars),
-				builder.getFitnessePort(envVars), builder.getFitnesseSsl());
+				getFitnessePort(), builder.getFitnesseSsl());
 	}
 
 	private Proc startFitnesse(FilePath workingDirectory, Launcher launcher) throws IOException, InterruptedException {
 		logger.println("Starting new Fitnesse instance...");
 		ProcStarter procStarter = launcher.launch().cmds(getJavaCmd(workingDirectory));
 		procStarter.pwd(getFilePath(workingDirectory, builder.getFitnesseJavaWorkingDirectory()));
-		procStarter.stdout(logger).stderr(logger);
+		startedLine = new CountDownLatch(1);
+		procStarter.stdout(new StartupWatcher(logger, startedLine)).stderr(logger);
 		return procStarter.start();
 	}
 
@@ -136,7 +423,10 @@ public class FitnesseExecutor implements Serializable {
 		if (!builder.getFitnesseJdk(envVars).isEmpty()) {
 			JDK jdk = Jenkins.getActiveInstance().getJDK(builder.getFitnesseJdk(envVars));
 			if (jdk != null) {
-				Node node = Computer.currentComputer().getNode();
+				Computer computer = Computer.currentComputer();
+				if (computer == null) // not running on an executor, e.g. when rerunning pages
+					computer = workingDirectory.toComputer();
+				Node node = computer == null ? null : computer.getNode();
 
 				if (node != null) {
 					jdk = jdk.forNode(node, listener);
@@ -163,7 +453,7 @@ public class FitnesseExecutor implements Serializable {
 		String[] fitnesse_opts = { // --
 				"-d", absolutePathToFitNesseRoot.getParent().getRemote(), // --
 				"-r", absolutePathToFitNesseRoot.getName(), // --
-				"-p", Integer.toString(builder.getFitnessePort(envVars))};
+				"-p", Integer.toString(getFitnessePort())};
 
 		// split additional fitness options and add them to those explicitly configured ones
 		String[] addOps = splitOptions(builder.getAdditionalFitnesseOptions());
@@ -212,36 +502,35 @@ public class FitnesseExecutor implements Serializable {
 	}
 
 	/**
-	 * Detect if fitnesse has started by try to do an HTTP connection
+	 * Detect if fitnesse has started by trying to connect to its port, waiting
+	 * a few milliseconds at first and twice as long after every attempt, or
+	 * until FitNesse writes that it is listening. The page is only requested
+	 * once the port accepts connections.
 	 *
 	 * @return true if fitnesse has started, false otherwise
 	 */
 	public boolean isFitnesseStarted(URL fitnessePageURL) throws InterruptedException {
-		long waitedAlready;
+		int startupTimeout = builder.getFitnesseStartupTimeout(envVars);
+		long start = System.currentTimeMillis();
+		long waitedAlready = 0;
 		boolean launched = false;
 		logger.println("Wait for Fitnesse Server start");
-		for (waitedAlready = 0; waitedAlready < STARTUP_TIMEOUT_MILLIS; waitedAlready += SLEEP_MILLIS) {
-			HttpURLConnection connection = null;
-			try {
-				connection = (HttpURLConnection) fitnessePageURL.openConnection();
-				connection.setRequestMethod("GET"); // HEAD is not allowed on Fitnesse
-				// server (error 400)
-				connection.setReadTimeout(READ_PAGE_TIMEOUT);
-				int responseCode = connection.getResponseCode();
-				if (responseCode != 200)
-					throw new RuntimeException(String.format("Response for page %s is %d", fitnessePageURL, responseCode));
+		for (int probeMillis = FIRST_PROBE_MILLIS;; probeMillis = Math.min(2 * probeMillis, MAX_PROBE_MILLIS)) {
+			if (acceptsConnections(fitnessePageURL) && respondsToRequest(fitnessePageURL)) {
 				launched = true;
 				break;
-			} catch (IOException e) {
-				logger.print('.');
-				logger.flush();
-				Thread.sleep(SLEEP_MILLIS);
-				launched = false;
-			} finally {
-				if (connection != null)
-					connection.disconnect();
 			}
+			waitedAlready = System.currentTimeMillis() - start;
+			if (waitedAlready >= startupTimeout)
+				break;
+			long sleepMillis = Math.min(probeMillis, startupTimeout - waitedAlready);
+			CountDownLatch line = startedLine;
+			if (line != null && line.getCount() > 0)
+				line.await(sleepMillis, TimeUnit.MILLISECONDS);
+			else
+				Thread.sleep(sleepMillis);
 		}
+		waitedAlready = System.currentTimeMillis() - start;
 
 		logger.printf(launched // --
 				? "%nFitnesse server started in %sms.%n" // --
@@ -250,6 +539,76 @@ public class FitnesseExecutor implements Serializable {
 		return launched;
 	}
 
+	/**
+	 * @return true if the port of the page accepts connections, which does not
+	 *         make the server render anything
+	 */
+	private static boolean acceptsConnections(URL fitnessePageURL) {
+		int port = fitnessePageURL.getPort() == -1 ? fitnessePageURL.getDefaultPort() : fitnessePageURL.getPort();
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(fitnessePageURL.getHost(), port), CONNECT_TIMEOUT_MILLIS);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// swallow
+			}
+		}
+	}
+
+	/**
+	 * Copies the output of the started FitNesse to the console, counting down
+	 * the latch when it writes {@link #STARTED_LINE}.
+	 */
+	static final class StartupWatcher extends LineTransformationOutputStream {
+		private final OutputStream out;
+		private final CountDownLatch started;
+
+		StartupWatcher(OutputStream out, CountDownLatch started) {
+			this.out = out;
+			this.started = started;
+		}
+
+		@Override
+		protected void eol(byte[] b, int len) throws IOException {
+			out.write(b, 0, len);
+			if (started.getCount() > 0 && STARTED_LINE.matcher(new String(b, 0, len, Charset.defaultCharset())).find())
+				started.countDown();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+	}
+
+	/**
+	 * @return true if the page could be read, false if the server can't be
+	 *         reached
+	 */
+	private boolean respondsToRequest(URL fitnessePageURL) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) fitnessePageURL.openConnection();
+			connection.setRequestMethod("GET"); // HEAD is not allowed on Fitnesse
+			// server (error 400)
+			connection.setReadTimeout(READ_PAGE_TIMEOUT);
+			int responseCode = connection.getResponseCode();
+			if (responseCode != 200)
+				throw new RuntimeException(String.format("Response for page %s is %d", fitnessePageURL, responseCode));
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (connection != null)
+				connection.disconnect();
+		}
+	}
+
 	private void killProc(Proc proc) {
 		if (proc != null) {
 			try {
@@ -265,19 +624,24 @@ public class FitnesseExecutor implements Serializable {
 	}
 
 	private void killTest(URL url) throws IOException, MalformedURLException {
-		if (fitnesseTestId == null)
-			return;
-		logger.println("Attempting to stop Fitnesse test with id " + fitnesseTestId);
-		URL pageStopTarget = new URL(url.toString().split("\\?")[0]
-				+ "?stoptest&id=" + fitnesseTestId);
-		HttpURLConnection connection = (HttpURLConnection) pageStopTarget
-				.openConnection();
-		connection.setReadTimeout(5000);
-		logger.println("Stop test result: " + connection.getResponseCode()
-				+ "/" + connection.getResponseMessage());
+		List<String> testIds;
+		synchronized (fitnesseTestIds) {
+			testIds = new ArrayList<String>(fitnesseTestIds);
+			fitnesseTestIds.clear();
+		}
+		for (String fitnesseTestId : testIds) {
+			logger.println("Attempting to stop Fitnesse test with id " + fitnesseTestId);
+			URL pageStopTarget = new URL(url.toString().split("\\?")[0]
+					+ "?stoptest&id=" + fitnesseTestId);
+			HttpURLConnection connection = (HttpURLConnection) pageStopTarget
+					.openConnection();
+			connection.setReadTimeout(5000);
+			logger.println("Stop test result: " + connection.getResponseCode()
+					+ "/" + connection.getResponseMessage());
+		}
 	}
 
-	private boolean readAndWriteFitnesseResults(final URL readFromURL, final FilePath writeToFilePath) {
+	/* package for test */boolean readAndWriteFitnesseResults(final URL readFromURL, final FilePath writeToFilePath) {
                 this.logger = this.listener.getLogger(); // needed for transient logger
                 // logger.println("Read from URL " + readFromURL);
                 // logger.println("Write to " + writeToFilePath);
@@ -290,22 +654,46 @@ public class FitnesseExecutor implements Serializable {
 				} catch (Exception e) {
 					// swallow - file may not exist
 				}
-				final byte[] bytes = getHttpBytes(readFromURL, runnerWithTimeOut, builder.getFitnesseHttpTimeout(envVars));
-				writeFitnesseResults(writeToFilePath, bytes);
+				writeFitnesseResults(readFromURL, runnerWithTimeOut, builder.getFitnesseHttpTimeout(envVars), writeToFilePath);
 			}
 		};
 
                 try {
                         runnerWithTimeOut.run(readAndWriteResults);
                 } catch (InterruptedException ie) {
+                  stopTests(readFromURL);
                   return true; // interrupted
                 }
                 return false; // not interrupted
 	}
 
+	/**
+	 * Stops the tests started from this side of the channel, those started on
+	 * a node are not known to the master.
+	 */
+	private void stopTests(URL url) {
+		try {
+			killTest(url);
+		} catch (Exception e) {
+			logger.println("Caught exception while trying to terminate Fitnesse test");
+		}
+	}
+
 	public byte[] getHttpBytes(URL pageCmdTarget, Resettable timeout, int httpTimeout) {
-		InputStream inputStream = null;
 		ByteArrayOutputStream bucket = new ByteArrayOutputStream();
+		copyHttpContent(pageCmdTarget, timeout, httpTimeout, bucket);
+		return bucket.toByteArray();
+	}
+
+	/**
+	 * Reads the content of the given URL and copies it chunk by chunk to the
+	 * given output stream, resetting the timeout after every chunk received.
+	 * Nothing is buffered apart from the current chunk, so the memory needed
+	 * does not depend on the size of the response.
+	 */
+	void copyHttpContent(URL pageCmdTarget, Resettable timeout, int httpTimeout, OutputStream out) {
+		InputStream inputStream = null;
+		String fitnesseTestId = null;
 
 		try {
 			logger.println("Connecting to " + pageCmdTarget);
@@ -323,6 +711,7 @@ public class FitnesseExecutor implements Serializable {
 			fitnesseTestId = connection.getHeaderField("X-FitNesse-Test-Id");
 			if (fitnesseTestId != null) {
 				logger.println("Fitnesse-Test-Id: " + fitnesseTestId);
+				fitnesseTestIds.add(fitnesseTestId);
 			}
 
 			inputStream = connection.getInputStream();
@@ -330,7 +719,7 @@ public class FitnesseExecutor implements Serializable {
 			byte[] buf = new byte[4096];
 			int lastRead;
 			while ((lastRead = inputStream.read(buf)) > 0) {
-				bucket.write(buf, 0, lastRead);
+				out.write(buf, 0, lastRead);
 				timeout.reset();
 				recvd += lastRead;
 				if (recvd - lastLogged > 1024) {
@@ -340,7 +729,8 @@ public class FitnesseExecutor implements Serializable {
 			}
 
 			// no exceptions, so the test has finished and should not be terminated
-			fitnesseTestId = null;
+			if (fitnesseTestId != null)
+				fitnesseTestIds.remove(fitnesseTestId);
 
 		} catch (IOException e) {
 			// this may be a "premature EOF" caused by e.g. incorrect content-length HTTP header
@@ -357,17 +747,32 @@ public class FitnesseExecutor implements Serializable {
 				}
 			}
 		}
-		return bucket.toByteArray();
 	}
 
 	/* package for test */URL getFitnessePage(Run<?, ?> build, boolean withCommand) throws IOException, InterruptedException {
 
 		return new URL(builder.getFitnesseSsl() ? "https" : "http", //
 				builder.getFitnesseHost(build, envVars), //
-				builder.getFitnessePort(envVars), //
+				getFitnessePort(), //
 				withCommand ? getFitnessePageCmd() : getFitnessePageBase());
 	}
 
+	/* package for test */URL getFitnessePageToRerun(Run<?, ?> build, String page) throws IOException,
+			InterruptedException {
+		return new URL(builder.getFitnesseSsl() ? "https" : "http", //
+				builder.getFitnesseHost(build, envVars), //
+				getFitnessePort(), //
+				"/" + page + "?suite&format=xml&includehtml");
+	}
+
+	/* package for test */URL getFitnessePartitionPage(Run<?, ?> build, int partitionIndex) throws IOException,
+			InterruptedException {
+		return new URL(builder.getFitnesseSsl() ? "https" : "http", //
+				builder.getFitnesseHost(build, envVars), //
+				getFitnessePort(), //
+				getFitnessePageCmd(partitionIndex));
+	}
+
 	/* package for test */String getFitnessePageBase() {
 		String targetPageExpression = builder.getFitnesseTargetPage(envVars);
 		int pos = targetPageExpression.indexOf('?');
@@ -378,9 +783,13 @@ public class FitnesseExecutor implements Serializable {
 	}
 
 	/* package for test */String getFitnessePageCmd() {
+		return getFitnessePageCmd(builder.getFitnessePartitionIndex());
+	}
+
+	/* package for test */String getFitnessePageCmd(int partitionIndex) {
 		String targetPageExpression = builder.getFitnesseTargetPage(envVars);
 		if (targetPageExpression.contains("?"))
-			return "/" + targetPageExpression + "&format=xml&includehtml";
+			return "/" + targetPageExpression + "&format=xml&includehtml" + getPartitioningDetails(partitionIndex);
 
 		int pos = targetPageExpression.indexOf('&');
 		if (pos == -1)
@@ -388,16 +797,15 @@ public class FitnesseExecutor implements Serializable {
 
         return String.format("/%1$s?%2$s%3$s", targetPageExpression.substring(0, pos),
                 "suite", targetPageExpression.substring(pos)
-                        + "&format=xml&includehtml" + getPartitioningDetails());
+                        + "&format=xml&includehtml" + getPartitioningDetails(partitionIndex));
     }
 
-    private String getPartitioningDetails() {
+    private String getPartitioningDetails(int partitionToExecute) {
         String valueToReturn = "";
         int partitionCount = builder.getFitnessePartitionCount();
         if (builder.getFitnessePartitionEnabled() && partitionCount > 1) {
-            int partitionToExecute = builder.getFitnessePartitionIndex();
             valueToReturn = "&partitionCount=" + partitionCount + "&partitionIndex=" + partitionToExecute;
-            String partitionFileName = builder.getFitnessePartitionIndexFile();
+            String partitionFileName = partitionIndexFile != null ? partitionIndexFile : builder.getFitnessePartitionIndexFile();
             if (partitionFileName.length() > 0) {
                 valueToReturn += "&partitionIndexFile=" + partitionFileName;
             }
@@ -405,11 +813,17 @@ public class FitnesseExecutor implements Serializable {
         return valueToReturn;
     }
 
-	private void writeFitnesseResults(FilePath resultsFilePath, byte[] results) {
+	/**
+	 * Streams the fitnesse results read from the given URL directly into the
+	 * results file, instead of collecting them in memory first: suite results
+	 * can grow up to several hundred MB.
+	 */
+	void writeFitnesseResults(URL readFromURL, Resettable timeout, int httpTimeout, FilePath resultsFilePath) {
 		OutputStream resultsStream = null;
 		try {
-			resultsStream = resultsFilePath.write();
-			resultsStream.write(results);
+			resultsStream = new BufferedOutputStream(resultsFilePath.write());
+			copyHttpContent(readFromURL, timeout, httpTimeout, resultsStream);
+			resultsStream.flush();
 			logger.println("Xml results saved as " + Charset.defaultCharset().displayName() + " to "
 					+ resultsFilePath.getRemote());
 		} catch (IOException e) {
@@ -462,6 +876,50 @@ public class FitnesseExecutor implements Serializable {
 
 	}
 
+	/**
+	 * Reads every partition on a thread of its own, so that the suite takes
+	 * the time of its slowest partition.
+	 *
+	 * @return true if reading any of them was interrupted
+	 */
+	private boolean readAndWriteFitnessePartitions(List<URL> pageURLs, List<FilePath> resultsFilePaths)
+			throws IOException {
+		this.logger = this.listener.getLogger(); // needed for transient logger
+		ExecutorService executor = Executors.newFixedThreadPool(pageURLs.size(), new NamingThreadFactory(
+				new DaemonThreadFactory(), "FitNesse partition"));
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < pageURLs.size(); i++) {
+				final int partitionIndex = i;
+				final URL pageURL = pageURLs.get(i);
+				final FilePath resultsFilePath = resultsFilePaths.get(i);
+				futures.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						long start = System.currentTimeMillis();
+						boolean interrupted = readAndWriteFitnesseResults(pageURL, resultsFilePath);
+						logger.printf("Partition %d finished in %dms%n", partitionIndex, System.currentTimeMillis() - start);
+						return interrupted;
+					}
+				}));
+			}
+
+			boolean interrupted = false;
+			for (Future<Boolean> future : futures) {
+				try {
+					interrupted |= future.get();
+				} catch (InterruptedException e) {
+					stopTests(pageURLs.get(0));
+					return true;
+				} catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				}
+			}
+			return interrupted;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
     private final class ReadAndWriteFitnesseResults extends MasterToSlaveCallable<Boolean, IOException> {
         private final URL fitnessePageURL;
         private final FilePath resultsFilePath;
@@ -475,4 +933,19 @@ public class FitnesseExecutor implements Serializable {
        }
     }
 
+	private final class ReadAndWriteFitnessePartitions extends MasterToSlaveCallable<Boolean, IOException> {
+		private final List<URL> pageURLs;
+		private final List<FilePath> resultsFilePaths;
+
+		ReadAndWriteFitnessePartitions(List<URL> pageURLs, List<FilePath> resultsFilePaths) {
+			this.pageURLs = pageURLs;
+			this.resultsFilePaths = resultsFilePaths;
+		}
+
+		@Override
+		public Boolean call() throws IOException {
+			return readAndWriteFitnessePartitions(pageURLs, resultsFilePaths);
+		}
+	}
+
 }
@@ -2,10 +2,16 @@ package hudson.plugins.fitnesse;
 
 import hudson.model.Job;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.Exported;
@@ -16,19 +22,92 @@ public class FitnesseHistory {
 	/** Files list */
 	private Set<String> files;
 
-	/** Pages by files */
-	public final Map<String, List<String>> pages;
+	/** Shown pages by files */
+	public final Map<String, List<String>> pages = new HashMap<String, List<String>>();
 
-	/** History builds (containing details for each individual page in that build) */
-	public final List<FitnesseResults> builds;
+	/** Number of pages matching the filter by files */
+	private final Map<String, Integer> matchingPages = new HashMap<String, Integer>();
 
+	/** Numbers of the shown history builds, the latest first */
+	public final List<Integer> builds;
 
-	public FitnesseHistory(Job<?, ?> project, Set<String> files, Map<String, List<String>> pages,
-			List<FitnesseResults> builds) {
+	/** Column of every build in {@link #results} */
+	private final Map<Integer, Integer> columns = new HashMap<Integer, Integer>();
+
+	/** Results of every shown page by files, one column per shown build */
+	private final Map<String, Map<String, String[]>> results = new HashMap<String, Map<String, String[]>>();
+
+	private final int totalBuilds;
+	private final int buildOffset;
+	private final int buildCount;
+	private final String filter;
+	private final int pageOffset;
+	private final int pageCount;
+
+
+	/**
+	 * Shows all builds and all pages.
+	 */
+	public FitnesseHistory(Job<?, ?> project, FitnesseHistoryIndex index) {
+		this(project, index, 0, Integer.MAX_VALUE, null, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Takes the results of the shown builds and pages out of the index at
+	 * once, so that rendering the history only needs hash lookups.
+	 * 
+	 * @param buildOffset
+	 *            number of latest builds to skip
+	 * @param buildCount
+	 *            maximum number of builds to show
+	 * @param filter
+	 *            only pages containing this text, ignoring case, are shown
+	 * @param pageOffset
+	 *            number of matching pages to skip in every file
+	 * @param pageCount
+	 *            maximum number of pages to show for every file
+	 */
+	public FitnesseHistory(Job<?, ?> project, FitnesseHistoryIndex index, int buildOffset, int buildCount,
+			String filter, int pageOffset, int pageCount) {
 		this.owner = project;
-		this.files = files;
-		this.pages = pages;
-		this.builds = builds;
+		this.buildOffset = buildOffset;
+		this.buildCount = buildCount;
+		this.filter = StringUtils.trimToNull(filter);
+		this.pageOffset = pageOffset;
+		this.pageCount = pageCount;
+
+		this.files = index.getFiles();
+		List<Integer> allBuilds = index.getBuilds();
+		this.totalBuilds = allBuilds.size();
+		this.builds = window(allBuilds, buildOffset, buildCount);
+		for (int i = 0; i < builds.size(); i++) {
+			columns.put(builds.get(i), i);
+		}
+		for (String file : files) {
+			List<String> filePages = filtered(index.getPages(file));
+			matchingPages.put(file, filePages.size());
+			filePages = window(filePages, pageOffset, pageCount);
+			pages.put(file, filePages);
+			results.put(file, index.getResults(file, filePages, builds));
+		}
+	}
+
+	private List<String> filtered(List<String> allPages) {
+		if (filter == null)
+			return allPages;
+		String lowerCaseFilter = filter.toLowerCase(Locale.ENGLISH);
+		List<String> filtered = new ArrayList<String>();
+		for (String page : allPages) {
+			if (page.toLowerCase(Locale.ENGLISH).contains(lowerCaseFilter))
+				filtered.add(page);
+		}
+		return filtered;
+	}
+
+	private static <T> List<T> window(List<T> list, int offset, int count) {
+		int from = Math.min(offset, list.size());
+		int to = (int) Math.min((long) from + count, list.size());
+		return new ArrayList<T>(list.subList(from, to));
 	}
 
 	@Exported(visibility = 2)
@@ -52,26 +131,90 @@ public class FitnesseHistory {
 		return pages.get(file);
 	}
 
-	public List<FitnesseResults> getBuilds() {
+	public List<Integer> getBuilds() {
 		return builds;
 	}
 
-	public String getResult(String file, String page, FitnesseResults build) {
-		for (FitnesseResults childFile : build.getChildResults()) {
-			if (file.equals(childFile.getName())) {
-				for (FitnesseResults child : childFile.getChildResults()) {
-					if (page.equals(child.getName())) {
-						if (child.isPassedOverall()) {
-							return "pass";
-						} else if (child.isFailedOverall()) {
-							return "fail";
-						} else {
-							return "";
-						}
-					}
-				}
+	public String getResult(String file, String page, int build) {
+		Map<String, String[]> fileResults = results.get(file);
+		String[] pageResults = fileResults == null ? null : fileResults.get(page);
+		Integer column = columns.get(build);
+		if (pageResults == null || column == null)
+			return "";
+		return pageResults[column];
+	}
+
+	/*
+	 * PAGING, referenced in index.jelly
+	 */
+
+	public String getFilter() {
+		return filter;
+	}
+
+	public int getTotalBuilds() {
+		return totalBuilds;
+	}
+
+	public int getMatchingPages(String file) {
+		Integer matching = matchingPages.get(file);
+		return matching == null ? 0 : matching;
+	}
+
+	public int getFirstPageShown() {
+		return pageOffset + 1;
+	}
+
+	public boolean hasNewerBuilds() {
+		return buildOffset > 0;
+	}
+
+	public boolean hasOlderBuilds() {
+		return buildOffset + builds.size() < totalBuilds;
+	}
+
+	public boolean hasPreviousPages() {
+		return pageOffset > 0;
+	}
+
+	public boolean hasNextPages() {
+		for (String file : files) {
+			if (pageOffset + pages.get(file).size() < getMatchingPages(file))
+				return true;
+		}
+		return false;
+	}
+
+	public String getNewerBuildsQuery() {
+		return query(Math.max(0, buildOffset - buildCount), pageOffset);
+	}
+
+	public String getOlderBuildsQuery() {
+		return query(buildOffset + buildCount, pageOffset);
+	}
+
+	public String getPreviousPagesQuery() {
+		return query(buildOffset, Math.max(0, pageOffset - pageCount));
+	}
+
+	public String getNextPagesQuery() {
+		return query(buildOffset, pageOffset + pageCount);
+	}
+
+	private String query(int newBuildOffset, int newPageOffset) {
+		StringBuilder query = new StringBuilder("?");
+		query.append(FitnesseHistoryAction.BUILD_OFFSET).append('=').append(newBuildOffset);
+		query.append('&').append(FitnesseHistoryAction.BUILD_COUNT).append('=').append(buildCount);
+		query.append('&').append(FitnesseHistoryAction.PAGE_OFFSET).append('=').append(newPageOffset);
+		query.append('&').append(FitnesseHistoryAction.PAGE_COUNT).append('=').append(pageCount);
+		if (filter != null) {
+			try {
+				query.append('&').append(FitnesseHistoryAction.FILTER).append('=')
+						.append(URLEncoder.encode(filter, "UTF-8"));
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e); // UTF-8 is always supported
 			}
 		}
-		return "";
+		return query.toString();
 	}
 }
@@ -2,41 +2,64 @@ package hudson.plugins.fitnesse;
 
 import hudson.model.Action;
 import hudson.model.Job;
-import hudson.model.Run;
-import hudson.plugins.fitnesse.NativePageCounts.Counts;
-import hudson.util.RunList;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
+import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerProxy;
+import org.kohsuke.stapler.StaplerRequest;
 
 import com.google.common.collect.Ordering;
 
 public class FitnesseHistoryAction implements StaplerProxy, Action {
-	private transient final Job<?,?> project;
+	/** Query parameters selecting the part of the history to show */
+	static final String BUILD_OFFSET = "buildOffset";
+	static final String BUILD_COUNT = "builds";
+	static final String PAGE_OFFSET = "pageOffset";
+	static final String PAGE_COUNT = "pages";
+	static final String FILTER = "filter";
+
+	static final int DEFAULT_BUILD_COUNT = Integer.getInteger(FitnesseHistoryAction.class.getName() + ".builds", 30);
+	static final int DEFAULT_PAGE_COUNT = Integer.getInteger(FitnesseHistoryAction.class.getName() + ".pages", 200);
 
-	private List<FitnesseResults> builds;
-	private Map<String, List<String>> allPages;
-	private Set<String> allFiles;
+	private transient final Job<?,?> project;
 
 	public FitnesseHistoryAction(Job<?, ?> project2) {
 		this.project = project2;
 	}
 
+	/**
+	 * Only loads the builds and pages requested, the latest
+	 * {@link #DEFAULT_BUILD_COUNT} builds and first {@link #DEFAULT_PAGE_COUNT}
+	 * pages of every file by default.
+	 */
 	@Override
-	@SuppressWarnings("unchecked")
 	public Object getTarget() {
-		extractValues((RunList<Run<?,?>>) project.getBuilds());
-		return new FitnesseHistory(project, allFiles, allPages, builds);
+		StaplerRequest req = Stapler.getCurrentRequest();
+		return new FitnesseHistory(project, FitnesseHistoryIndex.forJob(project), //
+				intParameter(req, BUILD_OFFSET, 0), //
+				intParameter(req, BUILD_COUNT, DEFAULT_BUILD_COUNT), //
+				req == null ? null : req.getParameter(FILTER), //
+				intParameter(req, PAGE_OFFSET, 0), //
+				intParameter(req, PAGE_COUNT, DEFAULT_PAGE_COUNT));
+	}
+
+	private static int intParameter(StaplerRequest req, String name, int defaultValue) {
+		String value = req == null ? null : req.getParameter(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Math.max(0, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
 	}
 
 	@Override
@@ -54,57 +77,6 @@ public class FitnesseHistoryAction implements StaplerProxy, Action {
 		return "fitnesseHistory";
 	}
 
-	public void extractValues(RunList<Run<?, ?>> runList) {
-		builds = new ArrayList<FitnesseResults>();
-		allFiles = new HashSet<String>();
-		allPages = new HashMap<String, List<String>>();
-
-		for (Run<?,?> build : runList) {
-			FitnesseResultsAction action = build.getAction(FitnesseResultsAction.class);
-			if (action != null) {
-				FitnesseResults result = action.getResult();
-				if (result.getPageCounts() != null) {
-
-					if (!(result instanceof CompoundFitnesseResults)) {
-						FitnesseResults fakeResult = new FitnesseResults(new Counts("", "", 0, 0, 0, 0, 0, "ALL"));
-						fakeResult.addChild(result);
-						fakeResult.setOwner(build);
-						result = fakeResult;
-					}
-					builds.add(result);
-
-					List<FitnesseResults> childResults = result.getChildResults();
-
-					Set<String> files = extractfiles(childResults);
-					allFiles.addAll(files);
-
-					Map<String, List<String>> pages = extractPages(childResults);
-					for (Entry<String, List<String>> entry : pages.entrySet()) {
-						String newFile = entry.getKey();
-						List<String> newPages = entry.getValue();
-						List<String> existingPages = allPages.get(newFile);
-						if (existingPages != null) {
-							for (String newPage : newPages) {
-								if (!existingPages.contains(newPage))
-									existingPages.add(newPage);
-							}
-						} else {
-							allPages.put(newFile, newPages);
-						}
-					}
-				}
-			}
-		}
-	}
-
-	private static Set<String> extractfiles(List<FitnesseResults> results) {
-		HashSet<String> files = new HashSet<String>();
-		for (FitnesseResults resultFile : results) {
-			files.add(resultFile.getName());
-		}
-		return files;
-	}
-
 	static Map<String, List<String>> extractPages(List<FitnesseResults> results) {
 		Map<String, List<String>> pages = new HashMap<String, List<String>>();
 
@@ -119,7 +91,7 @@ public class FitnesseHistoryAction implements StaplerProxy, Action {
 				info.recordResult(result);
 			}
 
-			pages.put(resultFile.getName(), sorted(pagesInfo));
+			pages.put(resultFile.getName(), sorted(pagesInfo.values()));
 		}
 		return pages;
 	}
@@ -127,8 +99,8 @@ public class FitnesseHistoryAction implements StaplerProxy, Action {
 	/*
 	 * SORT PAGES
 	 */
-	private static List<String> sorted(Map<String, PageInfo> map) {
-		List<PageInfo> pages = new ArrayList<PageInfo>(map.values());
+	static List<String> sorted(Collection<PageInfo> pagesInfo) {
+		List<PageInfo> pages = new ArrayList<PageInfo>(pagesInfo);
 		Collections.sort(pages, PageInfo.defaultOrdering());
 
 		List<String> pagesList = new ArrayList<String>();
@@ -138,7 +110,7 @@ public class FitnesseHistoryAction implements StaplerProxy, Action {
 		return pagesList;
 	}
 
-	private static class PageInfo {
+	static class PageInfo {
 		private final String page;
 
 		private boolean lastResultWasPass = true;
@@ -154,12 +126,16 @@ public class FitnesseHistoryAction implements StaplerProxy, Action {
 		}
 
 		public void recordResult(FitnesseResults result) {
-			if (result.isPassedOverall() || result.isFailedOverall()) {
+			recordResult(result.isPassedOverall(), result.isFailedOverall());
+		}
+
+		public void recordResult(boolean passed, boolean failed) {
+			if (passed || failed) {
 				numberOfOccurrances++;
-				if (lastResultWasPass == result.isFailedOverall()) {
+				if (lastResultWasPass == failed) {
 					numberOfSwitches++;
 				}
-				lastResultWasPass = result.isPassedOverall();
+				lastResultWasPass = passed;
 			}
 		}
 
@@ -0,0 +1,380 @@
+package hudson.plugins.fitnesse;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Pass/fail history of all the pages of a job, kept in a single small file
+ * next to the builds so that the FitNesse History page does not have to load
+ * every build. For every page the builds it passed and failed in are kept as
+ * bitmaps indexed by build number, from the first build the page has a result
+ * in. The index is extended whenever results are recorded and built once from
+ * the existing builds when missing.
+ */
+public class FitnesseHistoryIndex {
+	private static final Logger LOGGER = Logger.getLogger(FitnesseHistoryIndex.class.getName());
+
+	static final String FILE_NAME = "fitnesse-history.xml";
+
+	private static final Map<Job<?, ?>, FitnesseHistoryIndex> INDEXES = new WeakHashMap<Job<?, ?>, FitnesseHistoryIndex>();
+
+	/** Numbers of the builds having FitNesse results */
+	private final TreeSet<Integer> builds = new TreeSet<Integer>();
+
+	/** Pages by files */
+	private final Map<String, Map<String, PageHistory>> files = new TreeMap<String, Map<String, PageHistory>>();
+
+	private transient XmlFile file;
+	private transient PageNamePool pool;
+	/** Built from the builds and not written to its file yet */
+	private transient boolean rebuilt;
+	/** Pages by files, the most erratic first, until a build is added or removed */
+	private transient Map<String, List<String>> orderedPages;
+
+	FitnesseHistoryIndex() {
+		this(new PageNamePool());
+	}
+
+	private FitnesseHistoryIndex(PageNamePool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the index of the job, read from its file or built from its
+	 *         builds if there is none yet
+	 */
+	public static FitnesseHistoryIndex forJob(Job<?, ?> job) {
+		synchronized (INDEXES) {
+			FitnesseHistoryIndex index = INDEXES.get(job);
+			if (index != null)
+				return index;
+		}
+
+		// loading may go through every build, the other jobs don't wait for it
+		FitnesseHistoryIndex loaded = load(job);
+		FitnesseHistoryIndex index;
+		synchronized (INDEXES) {
+			index = INDEXES.get(job);
+			if (index == null) {
+				INDEXES.put(job, loaded);
+				index = loaded;
+			}
+		}
+		if (index == loaded && loaded.rebuilt)
+			loaded.save();
+		return index;
+	}
+
+	/**
+	 * Adds the results of a build to the index of its job.
+	 */
+	public static void recordBuild(Run<?, ?> build, FitnesseResults results) {
+		FitnesseHistoryIndex index = forJob(build.getParent());
+		index.add(build.getNumber(), results);
+		index.save();
+	}
+
+	/**
+	 * @return the index read from the file of the job, or built from its
+	 *         builds, not saved yet
+	 */
+	private static FitnesseHistoryIndex load(Job<?, ?> job) {
+		XmlFile xmlFile = new XmlFile(Jenkins.XSTREAM2, new File(job.getRootDir(), FILE_NAME));
+		if (xmlFile.exists()) {
+			try {
+				FitnesseHistoryIndex index = (FitnesseHistoryIndex) xmlFile.read();
+				index.file = xmlFile;
+				index.pool = PageNamePool.forJob(job);
+				index.internPageNames();
+				return index;
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Can't read " + xmlFile + ", rebuilding it", e);
+			}
+		}
+
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex(PageNamePool.forJob(job));
+		index.file = xmlFile;
+		index.rebuilt = true;
+		// the oldest first, so that the bitmaps grow at their end
+		List<Run<?, ?>> builds = new ArrayList<Run<?, ?>>(job.getBuilds());
+		Collections.reverse(builds);
+		for (Run<?, ?> build : builds) {
+			FitnesseResultsAction action = build.getAction(FitnesseResultsAction.class);
+			if (action != null) {
+				index.add(build.getNumber(), action.getResult());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Replaces the page names read from the file by those of the pool of the
+	 * job, shared with the results of its builds.
+	 */
+	private synchronized void internPageNames() {
+		for (Map.Entry<String, Map<String, PageHistory>> file : files.entrySet()) {
+			Map<String, PageHistory> pages = new TreeMap<String, PageHistory>();
+			for (Map.Entry<String, PageHistory> page : file.getValue().entrySet()) {
+				pages.put(pool.intern(page.getKey()), page.getValue());
+			}
+			file.setValue(pages);
+		}
+	}
+
+	private synchronized void save() {
+		if (file == null)
+			return;
+		try {
+			file.write(this);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Can't write " + file, e);
+		}
+	}
+
+	synchronized void add(int buildNumber, FitnesseResults results) {
+		if (results == null || results.getPageCounts() == null)
+			return;
+		builds.add(buildNumber);
+		orderedPages = null;
+
+		List<FitnesseResults> resultFiles = results instanceof CompoundFitnesseResults ? results.getChildResults()
+				: Collections.singletonList(results);
+		for (FitnesseResults resultFile : resultFiles) {
+			Map<String, PageHistory> pages = files.get(resultFile.getName());
+			if (pages == null) {
+				pages = new TreeMap<String, PageHistory>();
+				files.put(resultFile.getName(), pages);
+			}
+			Set<String> seen = new TreeSet<String>();
+			for (FitnesseResults page : resultFile.getChildResults()) {
+				String name = page.getName();
+				// like the history page always did, the first page of a name counts
+				if (!seen.add(name))
+					continue;
+				PageHistory history = pages.get(name);
+				if (history == null) {
+					history = new PageHistory();
+					pages.put(pool.intern(name), history);
+				}
+				history.record(buildNumber, page.isPassedOverall(), page.isFailedOverall());
+			}
+		}
+	}
+
+	synchronized void remove(int buildNumber) {
+		if (!builds.remove(buildNumber))
+			return;
+		orderedPages = null;
+		for (Iterator<Map<String, PageHistory>> filesIt = files.values().iterator(); filesIt.hasNext();) {
+			Map<String, PageHistory> pages = filesIt.next();
+			for (Iterator<PageHistory> pagesIt = pages.values().iterator(); pagesIt.hasNext();) {
+				PageHistory history = pagesIt.next();
+				history.forget(buildNumber);
+				if (history.isEmpty())
+					pagesIt.remove();
+			}
+			if (pages.isEmpty())
+				filesIt.remove();
+		}
+	}
+
+	/**
+	 * @return the numbers of the builds having results, the latest first
+	 */
+	public synchronized List<Integer> getBuilds() {
+		return new ArrayList<Integer>(builds.descendingSet());
+	}
+
+	public synchronized Set<String> getFiles() {
+		return new TreeSet<String>(files.keySet());
+	}
+
+	/**
+	 * @return the pages of a file, the most erratic first, ordered once for
+	 *         all the requests until a build is added or removed
+	 */
+	public synchronized List<String> getPages(String file) {
+		if (orderedPages == null)
+			orderedPages = new HashMap<String, List<String>>();
+		List<String> ordered = orderedPages.get(file);
+		if (ordered == null) {
+			ordered = Collections.unmodifiableList(orderPages(file));
+			orderedPages.put(file, ordered);
+		}
+		return ordered;
+	}
+
+	private List<String> orderPages(String file) {
+		Map<String, PageHistory> pages = files.get(file);
+		if (pages == null)
+			return Collections.emptyList();
+
+		List<FitnesseHistoryAction.PageInfo> pagesInfo = new ArrayList<FitnesseHistoryAction.PageInfo>();
+		for (Map.Entry<String, PageHistory> entry : pages.entrySet()) {
+			FitnesseHistoryAction.PageInfo info = new FitnesseHistoryAction.PageInfo(entry.getKey());
+			PageHistory history = entry.getValue();
+			for (Integer build : builds.descendingSet()) {
+				String result = history.resultIn(build);
+				info.recordResult("pass".equals(result), "fail".equals(result));
+			}
+			pagesInfo.add(info);
+		}
+		return FitnesseHistoryAction.sorted(pagesInfo);
+	}
+
+	/**
+	 * @return the results of the given pages of a file in the given builds, in
+	 *         the order of the builds, as returned by
+	 *         {@link #getResult(String, String, int)}
+	 */
+	public synchronized Map<String, String[]> getResults(String file, List<String> pages, List<Integer> builds) {
+		Map<String, PageHistory> filePages = files.get(file);
+		if (filePages == null)
+			return Collections.emptyMap();
+
+		Map<String, String[]> results = new HashMap<String, String[]>();
+		for (String page : pages) {
+			PageHistory history = filePages.get(page);
+			if (history == null)
+				continue;
+			String[] pageResults = new String[builds.size()];
+			for (int i = 0; i < pageResults.length; i++) {
+				pageResults[i] = history.resultIn(builds.get(i));
+			}
+			results.put(page, pageResults);
+		}
+		return results;
+	}
+
+	/**
+	 * @return "pass", "fail" or an empty string if the page was neither
+	 *         passed nor failed in the build
+	 */
+	public synchronized String getResult(String file, String page, int build) {
+		Map<String, PageHistory> pages = files.get(file);
+		PageHistory history = pages == null ? null : pages.get(page);
+		return history == null ? "" : history.resultIn(build);
+	}
+
+	/**
+	 * The builds a page passed and failed in, by build number from the first
+	 * build it has a result in, so that a page only costs a bit per build of
+	 * its history whatever the number of the build.
+	 */
+	static final class PageHistory {
+		/** Number of the build of the first bit */
+		private int base;
+		private BitSet passed = new BitSet();
+		private BitSet failed = new BitSet();
+
+		void record(int build, boolean isPassed, boolean isFailed) {
+			if (isEmpty())
+				base = build;
+			else if (build < base)
+				rebase(build);
+			passed.set(build - base, isPassed);
+			failed.set(build - base, isFailed);
+		}
+
+		String resultIn(int build) {
+			if (build < base)
+				return "";
+			if (passed.get(build - base))
+				return "pass";
+			if (failed.get(build - base))
+				return "fail";
+			return "";
+		}
+
+		void forget(int build) {
+			if (build < base)
+				return;
+			passed.clear(build - base);
+			failed.clear(build - base);
+			int first = firstBit();
+			if (first > 0)
+				rebase(base + first);
+		}
+
+		boolean isEmpty() {
+			return passed.isEmpty() && failed.isEmpty();
+		}
+
+		private int firstBit() {
+			int firstPassed = passed.nextSetBit(0);
+			int firstFailed = failed.nextSetBit(0);
+			if (firstPassed == -1)
+				return firstFailed;
+			if (firstFailed == -1)
+				return firstPassed;
+			return Math.min(firstPassed, firstFailed);
+		}
+
+		/**
+		 * Moves the bits so that the first one is the given build.
+		 */
+		private void rebase(int newBase) {
+			passed = shift(passed, base - newBase);
+			failed = shift(failed, base - newBase);
+			base = newBase;
+		}
+
+		private static BitSet shift(BitSet bits, int by) {
+			if (by < 0)
+				return bits.get(-by, Math.max(-by, bits.length()));
+			BitSet shifted = new BitSet(bits.length() + by);
+			for (int bit = bits.nextSetBit(0); bit != -1; bit = bits.nextSetBit(bit + 1)) {
+				shifted.set(bit + by);
+			}
+			return shifted;
+		}
+
+		/**
+		 * @return the number of bits of the history, for tests
+		 */
+		int size() {
+			return Math.max(passed.length(), failed.length());
+		}
+	}
+
+	/**
+	 * Drops deleted builds from the index of their job.
+	 */
+	@Extension
+	public static class DeletedBuildListener extends RunListener<Run<?, ?>> {
+		@Override
+		public void onDeleted(Run<?, ?> build) {
+			Job<?, ?> job = build.getParent();
+			FitnesseHistoryIndex index;
+			synchronized (INDEXES) {
+				index = INDEXES.get(job);
+			}
+			if (index == null && !new File(job.getRootDir(), FILE_NAME).exists())
+				return;
+			index = forJob(job);
+			index.remove(build.getNumber());
+			index.save();
+		}
+	}
+}
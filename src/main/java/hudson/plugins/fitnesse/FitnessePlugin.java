@@ -5,6 +5,9 @@ import hudson.Plugin;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
@@ -14,8 +17,11 @@ import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.*;
 
+import org.xml.sax.SAXException;
+
 public class FitnessePlugin extends Plugin {
 	static Templates templates;
+	private static SAXParserFactory parserFactory;
 
 	@Override
 	public void start() throws Exception {
@@ -53,4 +59,19 @@ public class FitnessePlugin extends Plugin {
 		return templates.newTransformer();
 	}
 
+	public static synchronized SAXParser newRawResultsParser() throws SAXException {
+		try {
+			if (parserFactory == null) {
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+				factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+				factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+				parserFactory = factory;
+			}
+			return parserFactory.newSAXParser();
+		} catch (ParserConfigurationException e) {
+			throw new SAXException("Can't initialize parser", e);
+		}
+	}
+
 }
@@ -1,10 +1,20 @@
 package hudson.plugins.fitnesse;
 
+import hudson.Extension;
 import hudson.model.Action;
 import hudson.model.Job;
 import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class FitnesseProjectAction implements Action {
+	private static final int NO_RESULTS = 0;
+
+	/** Number of the latest build with results by job, or {@link #NO_RESULTS} */
+	private static final Map<Job<?,?>, Integer> LATEST_RESULTS = new WeakHashMap<Job<?,?>, Integer>();
 
 	private transient Job<?,?> project;
 
@@ -55,14 +65,37 @@ public class FitnesseProjectAction implements Action {
 	/**
 	 * Used in jobMain.jelly
 	 * {@see TestResultProjectAction#getLastTestResultAction()}
+	 * The build found is remembered until a build of the job completes or is
+	 * deleted.
 	 */
 	public FitnesseResultsAction getLatestResults() {
+		Integer number;
+		synchronized (LATEST_RESULTS) {
+			number = LATEST_RESULTS.get(project);
+		}
+		if (number != null) {
+			if (number == NO_RESULTS)
+				return null;
+			Run<?,?> b = project.getBuildByNumber(number);
+			FitnesseResultsAction a = b == null ? null : b.getAction(FitnesseResultsAction.class);
+			if (a != null)
+				return a;
+		}
+
+		Run<?,?> latest = findLatestResults();
+		synchronized (LATEST_RESULTS) {
+			LATEST_RESULTS.put(project, latest == null ? NO_RESULTS : latest.getNumber());
+		}
+		return latest == null ? null : latest.getAction(FitnesseResultsAction.class);
+	}
+
+	private Run<?,?> findLatestResults() {
 		final Run<?,?> tb = project.getLastSuccessfulBuild();
 		Run<?,?> b = project.getLastBuild();
 		while (b != null) {
 			FitnesseResultsAction a = b.getAction(FitnesseResultsAction.class);
 			if (a != null) {
-				return a;
+				return b;
 			} else if (b == tb) {
 				// if even the last successful build didn't produce the test result,
 				// that means we just don't have any tests configured.
@@ -73,4 +106,27 @@ public class FitnesseProjectAction implements Action {
 
 		return null;
 	}
+
+	/**
+	 * Forgets the latest results of a job when one of its builds completes or
+	 * is deleted.
+	 */
+	@Extension
+	public static class LatestResultsListener extends RunListener<Run<?,?>> {
+		@Override
+		public void onCompleted(Run<?,?> build, TaskListener listener) {
+			forget(build);
+		}
+
+		@Override
+		public void onDeleted(Run<?,?> build) {
+			forget(build);
+		}
+
+		private static void forget(Run<?,?> build) {
+			synchronized (LATEST_RESULTS) {
+				LATEST_RESULTS.remove(build.getParent());
+			}
+		}
+	}
 }
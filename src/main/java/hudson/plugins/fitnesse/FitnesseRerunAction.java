@@ -0,0 +1,431 @@
+package hudson.plugins.fitnesse;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Node;
+import hudson.model.Project;
+import hudson.model.Run;
+import hudson.model.User;
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+import hudson.slaves.WorkspaceList;
+import hudson.tasks.Builder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.Jenkins;
+import jenkins.model.RunAction2;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+import org.xml.sax.SAXException;
+
+/**
+ * Runs single pages of a build again, on the node the build ran on and with
+ * the FitNesse configuration it used, so that a failure can be looked into
+ * without running the whole build again. The results of the reruns are kept
+ * with the build.
+ * <p>
+ * Only failed pages of the build can be rerun. A rerun runs in the
+ * background, holding the workspace like a build does, and is listed as
+ * running until its results are in.
+ */
+public class FitnesseRerunAction implements RunAction2 {
+	static final String LOG_FILE_NAME = "fitnesse-rerun.log";
+
+	private static final Logger LOGGER = Logger.getLogger(FitnesseRerunAction.class.getName());
+	private static final ExecutorService RERUNS = Executors.newCachedThreadPool(new NamingThreadFactory(
+			new DaemonThreadFactory(), "FitNesse rerun"));
+
+	/** FitNesse configuration of the build, without the password */
+	private final Map<String, String> options;
+	/** Name of the node the build ran on, empty for the master */
+	private final String nodeName;
+	private final String workspace;
+	/** Changed under the lock of the action, read without it */
+	private List<Rerun> reruns = new CopyOnWriteArrayList<Rerun>();
+
+	private transient Run<?, ?> run;
+
+	public FitnesseRerunAction(Map<String, String> options, String nodeName, String workspace) {
+		this.options = new HashMap<String, String>(options);
+		this.options.remove(FitnesseBuilder.FITNESSE_PASSWORD);
+		this.nodeName = nodeName;
+		this.workspace = workspace;
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	/**
+	 * Reruns still running when Jenkins stopped are over, without results
+	 */
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+		synchronized (this) {
+			for (int i = 0; i < reruns.size(); i++) {
+				if (reruns.get(i).isRunning())
+					reruns.set(i, reruns.get(i).finish(Collections.<Counts> emptyList()));
+			}
+		}
+	}
+
+	private Object readResolve() {
+		reruns = new CopyOnWriteArrayList<Rerun>(reruns == null ? Collections.<Rerun> emptyList() : reruns);
+		return this;
+	}
+
+	public Run<?, ?> getRun() {
+		return run;
+	}
+
+	/**
+	 * @return null to hide from left-hand list until a page was rerun
+	 */
+	public String getIconFileName() {
+		return getReruns().isEmpty() ? null : "/plugin/fitnesse/icons/fitnesselogo-32x32.gif";
+	}
+
+	public String getDisplayName() {
+		return "FitNesse Reruns";
+	}
+
+	public String getUrlName() {
+		return "fitnesseRerun";
+	}
+
+	/**
+	 * Referenced in index.jelly, the latest rerun first
+	 */
+	public List<Rerun> getReruns() {
+		List<Rerun> latestFirst = new ArrayList<Rerun>(reruns);
+		Collections.reverse(latestFirst);
+		return latestFirst;
+	}
+
+	/**
+	 * Referenced in index.jelly, to refresh the page until the results are in
+	 */
+	public boolean isRunning() {
+		for (Rerun rerun : reruns) {
+			if (rerun.isRunning())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Starts rerunning the pages given by the <tt>page</tt> parameters,
+	 * referenced in FitnesseResults/body.jelly
+	 */
+	@RequirePOST
+	public HttpResponse doRerun(StaplerRequest req) throws IOException {
+		run.checkPermission(Item.BUILD);
+		if (!isRerunnable())
+			return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "The FitNesse password of "
+					+ run.getParent().getFullDisplayName() + " is not kept with its builds, they can't be rerun");
+		String[] pages = req.getParameterValues("page");
+		if (pages == null || pages.length == 0)
+			return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "No page to rerun");
+		FitnesseResultsAction resultsAction = run.getAction(FitnesseResultsAction.class);
+		Set<String> failedPages = resultsAction == null ? Collections.<String> emptySet()
+				: getRerunnablePages(resultsAction.getResult());
+		for (String page : pages) {
+			if (!failedPages.contains(page))
+				return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "Not a failed page of the build: "
+						+ page);
+		}
+
+		User user = User.current();
+		final Rerun rerun = startRerun(pages, user == null ? null : user.getId());
+		run.save();
+		RERUNS.submit(new Runnable() {
+			public void run() {
+				execute(rerun);
+			}
+		});
+		return HttpResponses.redirectToDot();
+	}
+
+	/**
+	 * @return the names of the failed pages of the results, the only pages
+	 *         that can be rerun
+	 */
+	static Set<String> getRerunnablePages(FitnesseResults results) {
+		Set<String> pages = new HashSet<String>();
+		addRerunnablePages(results, pages);
+		return pages;
+	}
+
+	private static void addRerunnablePages(FitnesseResults results, Set<String> pages) {
+		for (FitnesseResults failed : results.getFailedTests()) {
+			if (failed.isRerunnable())
+				pages.add(failed.getPageName());
+			else
+				addRerunnablePages(failed, pages);
+		}
+	}
+
+	/**
+	 * Lists a new rerun of the pages, running until
+	 * {@link #finishRerun(Rerun, List)}
+	 */
+	synchronized Rerun startRerun(String[] pages, String userId) {
+		int number = reruns.size() + 1;
+		Rerun rerun = new Rerun(number, System.currentTimeMillis(), userId, pages, null, number + "-"
+				+ LOG_FILE_NAME);
+		reruns.add(rerun);
+		return rerun;
+	}
+
+	synchronized void finishRerun(Rerun rerun, List<Counts> results) {
+		int index = reruns.indexOf(rerun);
+		if (index != -1)
+			reruns.set(index, rerun.finish(results));
+	}
+
+	private void execute(Rerun rerun) {
+		List<Counts> results = Collections.emptyList();
+		try {
+			StreamTaskListener listener = new StreamTaskListener(new File(run.getRootDir(), rerun.logFile));
+			try {
+				results = rerun(rerun.pages, listener);
+			} catch (IOException e) {
+				e.printStackTrace(listener.getLogger());
+			} catch (InterruptedException e) {
+				e.printStackTrace(listener.getLogger());
+			} catch (SAXException e) {
+				e.printStackTrace(listener.getLogger());
+			} finally {
+				listener.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to write the log of rerun " + rerun.number + " of " + run, e);
+		}
+
+		finishRerun(rerun, results);
+		try {
+			run.save();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to save rerun " + rerun.number + " of " + run, e);
+		}
+	}
+
+	/**
+	 * Reruns the pages in the workspace of the build, waiting until no build
+	 * uses it.
+	 */
+	private List<Counts> rerun(String[] pages, StreamTaskListener listener) throws IOException,
+			InterruptedException, SAXException {
+		PrintStream logger = listener.getLogger();
+		Node node = nodeName.isEmpty() ? Jenkins.getActiveInstance() : Jenkins.getActiveInstance().getNode(nodeName);
+		FilePath workspacePath = node == null ? null : node.createPath(workspace);
+		if (workspacePath == null || workspacePath.getChannel() == null) {
+			logger.println("Node " + nodeName + " of the build is not available");
+			return Collections.emptyList();
+		}
+
+		// the master may have no executor, so no computer and no build using the workspace
+		Computer computer = node.toComputer();
+		WorkspaceList.Lease lease = computer == null ? WorkspaceList.Lease.createDummyLease(workspacePath)
+				: computer.getWorkspaceList().tryAcquire(workspacePath);
+		if (lease == null) {
+			logger.println("Waiting for the workspace " + workspacePath + " to be free");
+			lease = computer.getWorkspaceList().acquire(workspacePath);
+		}
+		try {
+			return rerun(node, workspacePath, pages, listener);
+		} finally {
+			lease.release();
+		}
+	}
+
+	private List<Counts> rerun(Node node, FilePath workspacePath, String[] pages, StreamTaskListener listener)
+			throws IOException, InterruptedException, SAXException {
+		PrintStream logger = listener.getLogger();
+		EnvVars envVars = run.getEnvironment(listener);
+		FitnesseBuilder builder = new FitnesseBuilder(getOptionsWithPassword());
+		Launcher launcher = node.createLauncher(listener);
+
+		List<String> pageList = new ArrayList<String>();
+		List<FilePath> resultsFiles = new ArrayList<FilePath>();
+		for (String page : pages) {
+			pageList.add(page);
+			resultsFiles.add(workspacePath.createTempFile("fitnesse-rerun", ".xml"));
+		}
+		List<Counts> results = new ArrayList<Counts>();
+		try {
+			FitnesseExecutor executor = new FitnesseExecutor(builder, listener, envVars);
+			if (!executor.rerun(launcher, workspacePath, run, pageList, resultsFiles))
+				return results;
+
+			FitnesseResultsRecorder recorder = new FitnesseResultsRecorder(null);
+			for (FilePath resultsFile : resultsFiles) {
+				FitnesseResults pageResults = recorder.getResults(logger, resultsFile, run.getRootDir());
+				for (FitnesseResults detail : pageResults.getChildResults()) {
+					results.add(detail.getPageCounts());
+				}
+			}
+			return results;
+		} finally {
+			for (FilePath resultsFile : resultsFiles) {
+				resultsFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Referenced through {@link FitnesseResults#getRerunAction()}: the pages
+	 * can only be rerun if FitNesse needs no password or the job still has it.
+	 */
+	public boolean isRerunnable() {
+		String username = options.get(FitnesseBuilder.FITNESSE_USERNAME);
+		return username == null || username.trim().length() == 0 || getPassword() != null;
+	}
+
+	private Map<String, String> getOptionsWithPassword() {
+		Map<String, String> optionsWithPassword = new HashMap<String, String>(options);
+		String password = getPassword();
+		if (password != null)
+			optionsWithPassword.put(FitnesseBuilder.FITNESSE_PASSWORD, password);
+		return optionsWithPassword;
+	}
+
+	/**
+	 * The password is not kept with the build, it is taken from the job if it
+	 * is still configured to run FitNesse.
+	 *
+	 * @return null if the job is not a project running FitNesse
+	 */
+	private String getPassword() {
+		Job<?, ?> job = run.getParent();
+		if (job instanceof Project) {
+			for (Builder builder : ((Project<?, ?>) job).getBuilders()) {
+				if (builder instanceof FitnesseBuilder)
+					return ((FitnesseBuilder) builder).getFitnessePassword();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Streams the html content of a rerun page, see
+	 * {@link ResultsDetails#doContent}
+	 */
+	public void doContent(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		Rerun rerun = getRerun(req.getParameter("rerun"));
+		Counts pageCounts = rerun == null ? null : rerun.getPage(req.getParameter("page"));
+		if (pageCounts == null) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		ResultsDetails.serveContent(pageCounts, req, rsp);
+	}
+
+	/**
+	 * Shows the log of a rerun
+	 */
+	public void doLog(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+		Rerun rerun = getRerun(req.getParameter("rerun"));
+		File logFile = rerun == null ? null : new File(run.getRootDir(), rerun.logFile);
+		if (logFile == null || !logFile.isFile()) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		rsp.serveFile(req, logFile.toURI().toURL());
+	}
+
+	private Rerun getRerun(String number) {
+		for (Rerun rerun : reruns) {
+			if (String.valueOf(rerun.number).equals(number))
+				return rerun;
+		}
+		return null;
+	}
+
+	/**
+	 * The pages run again at once and their results, null while they run.
+	 */
+	public static final class Rerun {
+		private final int number;
+		private final long timestamp;
+		private final String userId;
+		private final String[] pages;
+		private final List<Counts> results;
+		private final String logFile;
+
+		Rerun(int number, long timestamp, String userId, String[] pages, List<Counts> results, String logFile) {
+			this.number = number;
+			this.timestamp = timestamp;
+			this.userId = userId;
+			this.pages = pages;
+			this.results = results == null ? null : new ArrayList<Counts>(results);
+			this.logFile = logFile;
+		}
+
+		Rerun finish(List<Counts> results) {
+			return new Rerun(number, timestamp, userId, pages, results, logFile);
+		}
+
+		public boolean isRunning() {
+			return results == null;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public String getUserId() {
+			return userId;
+		}
+
+		public String[] getPages() {
+			return pages;
+		}
+
+		public List<Counts> getResults() {
+			return results;
+		}
+
+		Counts getPage(String page) {
+			if (results == null)
+				return null;
+			for (Counts counts : results) {
+				if (counts.page.equals(page))
+					return counts;
+			}
+			return null;
+		}
+	}
+}
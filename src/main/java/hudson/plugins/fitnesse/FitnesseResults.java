@@ -29,26 +29,40 @@ public class FitnesseResults extends TabulatedResult implements Comparable<Fitne
 
 	// private static final Logger log = Logger.getLogger(FitnesseResults.class.getName());
 	private static final long serialVersionUID = 1L;
-	private transient List<FitnesseResults> failed;
-	private transient List<FitnesseResults> skipped;
-	private transient List<FitnesseResults> passed;
 
 	private Counts pageCounts;
 	private FitnesseResults parent;
 	private List<FitnesseResults> details = new ArrayList<FitnesseResults>();
+	/** The pages of a results file, kept compact instead of in details */
+	private CountsTable detailTable;
 
 	private transient Run<?,?> owner;
 	private transient TaskListener listener;
+	private transient volatile ChildIndex childIndex;
+	private transient volatile ChildPartition childPartition;
+	private transient volatile List<FitnesseResults> tableDetails;
 
 	public FitnesseResults(Counts pageCounts) {
 		this.pageCounts = pageCounts;
 	}
 
 	FitnesseResults(NativePageCounts allCounts) {
-		this(allCounts.getSummary());
-		for (Counts detail : allCounts.getDetails()) {
-			addChild(new FitnesseResults(detail));
-		}
+		this(allCounts.getSummary(), allCounts.getDetails());
+	}
+
+	/**
+	 * The details are kept in a {@link CountsTable}, their results are only
+	 * created when they are looked at.
+	 */
+	FitnesseResults(Counts summary, List<Counts> details) {
+		this(summary);
+		if (!details.isEmpty())
+			this.detailTable = new CountsTable(details);
+	}
+
+	FitnesseResults(Counts summary, CountsTable detailTable) {
+		this(summary);
+		this.detailTable = detailTable;
 	}
 
 	@SuppressFBWarnings("SE_PRIVATE_READ_RESOLVE_NOT_INHERITED")
@@ -64,6 +78,9 @@ public class FitnesseResults extends TabulatedResult implements Comparable<Fitne
 	void addChild(FitnesseResults fitnesseResults) {
 		details.add(fitnesseResults);
 		fitnesseResults.setParent(this);
+		tableDetails = null;
+		childIndex = null;
+		childPartition = null;
 	}
 
 	/**
@@ -74,12 +91,7 @@ public class FitnesseResults extends TabulatedResult implements Comparable<Fitne
 	public TestResult findCorrespondingResult(final String id) {
 		if (id.equals(getId()))
 			return this;
-		List<FitnesseResults> match = filteredCopyOfDetails(new ResultsFilter() {
-			public boolean include(FitnesseResults fitnesseResults) {
-				return id.equals(fitnesseResults.getId());
-			}
-		});
-		return (match.size() == 0 ? null : match.get(0));
+		return getChildIndex().byId.get(id);
 	}
 
 	public void setOwner(Run<?,?> build) {
@@ -291,56 +303,19 @@ public class FitnesseResults extends TabulatedResult implements Comparable<Fitne
 	@Override
 	@Exported(visibility = 1)
 	public Collection<FitnesseResults> getFailedTests() {
-		if (failed == null) {
-			failed = filteredCopyOfDetails(new ResultsFilter() {
-				public boolean include(FitnesseResults results) {
-					return results.isFailedOverall();
-				}
-			});
-		}
-		return failed;
+		return getChildPartition().failed;
 	}
 
 	@Override
 	@Exported(visibility = 1)
 	public Collection<FitnesseResults> getPassedTests() {
-		if (passed == null) {
-			passed = filteredCopyOfDetails(new ResultsFilter() {
-				public boolean include(FitnesseResults results) {
-					return results.isPassedOverall();
-				}
-			});
-		}
-		return passed;
+		return getChildPartition().passed;
 	}
 
 	@Override
 	@Exported(visibility = 1)
 	public Collection<FitnesseResults> getSkippedTests() {
-		if (skipped == null) {
-			skipped = filteredCopyOfDetails(new ResultsFilter() {
-				public boolean include(FitnesseResults results) {
-					return results.isSkippedOverall();
-				}
-			});
-		}
-		return skipped;
-	}
-
-	private List<FitnesseResults> filteredCopyOfDetails(
-			ResultsFilter countsFilter) {
-		List<FitnesseResults> filteredCopy = new ArrayList<FitnesseResults>();
-		for (FitnesseResults result : details) {
-			if (countsFilter.include(result)) {
-				filteredCopy.add(result);
-			}
-		}
-		Collections.sort(filteredCopy);
-		return filteredCopy;
-	}
-
-	interface ResultsFilter {
-		public boolean include(FitnesseResults fitnesseResults);
+		return getChildPartition().skipped;
 	}
 
 	/**
@@ -380,6 +355,30 @@ public class FitnesseResults extends TabulatedResult implements Comparable<Fitne
 				+ getResultsDate(), null, "Details");
 	}
 
+	/**
+	 * referenced in body.jelly, null if the pages of the build can't be rerun
+	 */
+	public FitnesseRerunAction getRerunAction() {
+		Run<?,?> run = getRun();
+		FitnesseRerunAction action = run == null ? null : run.getAction(FitnesseRerunAction.class);
+		return action == null || !action.isRerunnable() ? null : action;
+	}
+
+	/**
+	 * referenced in failedTests.jelly, true for a page of a results file, as
+	 * opposed to a results file or the results of all files
+	 */
+	public boolean isRerunnable() {
+		return parent != null && !(parent instanceof CompoundFitnesseResults) && !hasChildResults();
+	}
+
+	/**
+	 * referenced in failedTests.jelly, the full name of the page to rerun
+	 */
+	public String getPageName() {
+		return pageCounts.page;
+	}
+
 	public String getRunTestRemoteLink() throws IOException, InterruptedException {
 		FitnesseBuildAction buildAction = getFitnesseBuildAction();
 		String text = "Run Test";
@@ -429,14 +428,79 @@ public class FitnesseResults extends TabulatedResult implements Comparable<Fitne
 
 	@SuppressWarnings("unchecked")
 	private <T extends TestResult> T findChildByName(String aName) {
-		Collection<? extends TestResult> children = getChildren();
-		for (TestResult child : children) {
-			if (aName.equals(child.getName())) {
-				return (T) child;
+		return (T) getChildIndex().byName.get(aName);
+	}
+
+	private ChildIndex getChildIndex() {
+		ChildIndex index = childIndex;
+		if (index == null) {
+			index = new ChildIndex(this);
+			childIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * The children by id and by name, built on first access so that
+	 * navigating to a page of a large suite does not scan all the pages.
+	 */
+	private static final class ChildIndex {
+		private final Map<String, FitnesseResults> byId = new HashMap<String, FitnesseResults>();
+		private final Map<String, TestResult> byName = new HashMap<String, TestResult>();
+
+		ChildIndex(FitnesseResults results) {
+			List<FitnesseResults> sortedDetails = new ArrayList<FitnesseResults>(results.getChildResults());
+			Collections.sort(sortedDetails);
+			// like a search in the sorted details, the first one found wins
+			for (FitnesseResults detail : sortedDetails) {
+				String id = detail.getId();
+				if (!byId.containsKey(id))
+					byId.put(id, detail);
+			}
+			for (TestResult child : results.getChildren()) {
+				String name = child.getName();
+				if (!byName.containsKey(name))
+					byName.put(name, child);
 			}
 		}
+	}
 
-		return null;
+	private ChildPartition getChildPartition() {
+		ChildPartition partition = childPartition;
+		if (partition == null) {
+			partition = new ChildPartition(getChildResults());
+			childPartition = partition;
+		}
+		return partition;
+	}
+
+	/**
+	 * The failed, passed and skipped details, each sorted, split in a single
+	 * pass over the sorted details on first access.
+	 */
+	private static final class ChildPartition {
+		private final List<FitnesseResults> failed;
+		private final List<FitnesseResults> passed;
+		private final List<FitnesseResults> skipped;
+
+		ChildPartition(List<FitnesseResults> details) {
+			List<FitnesseResults> sortedDetails = new ArrayList<FitnesseResults>(details);
+			Collections.sort(sortedDetails);
+			List<FitnesseResults> failed = new ArrayList<FitnesseResults>();
+			List<FitnesseResults> passed = new ArrayList<FitnesseResults>();
+			List<FitnesseResults> skipped = new ArrayList<FitnesseResults>();
+			for (FitnesseResults detail : sortedDetails) {
+				if (detail.isFailedOverall())
+					failed.add(detail);
+				else if (detail.isSkippedOverall())
+					skipped.add(detail);
+				else
+					passed.add(detail);
+			}
+			this.failed = Collections.unmodifiableList(failed);
+			this.passed = Collections.unmodifiableList(passed);
+			this.skipped = Collections.unmodifiableList(skipped);
+		}
 	}
 
 	/**
@@ -482,6 +546,35 @@ public class FitnesseResults extends TabulatedResult implements Comparable<Fitne
 	 * {@link #addChild(FitnesseResults)}
 	 */
 	protected List<FitnesseResults> getChildResults() {
+		if (detailTable == null)
+			return details;
+		List<FitnesseResults> children = tableDetails;
+		if (children == null) {
+			children = new ArrayList<FitnesseResults>(details.size() + detailTable.size());
+			children.addAll(details);
+			for (int row = 0; row < detailTable.size(); row++) {
+				FitnesseResults child = new FitnesseResults(detailTable.get(row));
+				child.setParent(this);
+				children.add(child);
+			}
+			children = Collections.unmodifiableList(children);
+			tableDetails = children;
+		}
+		return children;
+	}
+
+	/**
+	 * The details kept in a {@link CountsTable}, null if there are none
+	 */
+	CountsTable getDetailTable() {
+		return detailTable;
+	}
+
+	/**
+	 * The details added with {@link #addChild(FitnesseResults)}, without those
+	 * of {@link #getDetailTable()}
+	 */
+	List<FitnesseResults> getAddedDetails() {
 		return details;
 	}
 
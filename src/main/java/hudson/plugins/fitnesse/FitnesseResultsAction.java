@@ -7,23 +7,48 @@ import jenkins.tasks.SimpleBuildStep;
 import hudson.model.Action;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.kohsuke.stapler.StaplerProxy;
 
 
+/**
+ * Only the summary of the results is kept in build.xml, the results of all the
+ * pages are written to a {@link ResultsTreeFile} next to it and read back when
+ * they are looked at.
+ */
 public class FitnesseResultsAction extends AbstractTestResultAction<FitnesseResultsAction> implements StaplerProxy, SimpleBuildStep.LastBuildAction {
+	private static final Logger LOGGER = Logger.getLogger(FitnesseResultsAction.class.getName());
+
+	private Counts summary;
+	/** All the results, only kept in build.xml if they could not be written to their own file */
 	private FitnesseResults results;
+	transient private SoftReference<FitnesseResults> loadedResults;
+	transient private TaskListener listener;
 	transient private List<Action> projectActions;
 
 	protected FitnesseResultsAction(Run<?,?> owner, FitnesseResults results, TaskListener listener) {
-		this.results = results;
-		this.results.setOwner(owner);
-		this.results.setTaskListener(listener);
+		this.summary = results.getPageCounts();
+		this.listener = listener;
+		results.setOwner(owner);
+		results.setTaskListener(listener);
+		try {
+			ResultsTreeFile.write(new File(owner.getRootDir(), ResultsTreeFile.FILE_NAME), results);
+			this.loadedResults = new SoftReference<FitnesseResults>(results);
+		} catch (IOException e) {
+			listener.getLogger().println("Can't write the results to their own file, keeping them in build.xml: " + e);
+			this.results = results;
+		}
 		
 		List<Action> projectActions = new ArrayList<Action>();
 		projectActions.add(new FitnesseProjectAction(owner.getParent()));
@@ -33,22 +58,56 @@ public class FitnesseResultsAction extends AbstractTestResultAction<FitnesseResu
 
 	@Override
 	public int getFailCount() {
-		return results.getFailCount();
+		return getSummaryResults().getFailCount();
 	}
 
 	@Override
 	public int getTotalCount() {
-		return results.getTotalCount();
+		return getSummaryResults().getTotalCount();
 	}
 
 	@Override
 	public int getSkipCount() {
-		return results.getSkipCount();
+		return getSummaryResults().getSkipCount();
+	}
+
+	/**
+	 * The counts of the results, without reading the results of the pages
+	 */
+	private FitnesseResults getSummaryResults() {
+		if (results != null)
+			return results;
+		return new FitnesseResults(summary);
 	}
 
+	/**
+	 * @return the results of all the pages, read from their file unless they
+	 *         are still in memory
+	 */
 	@Override
-	public FitnesseResults getResult() {
-		return results;
+	public synchronized FitnesseResults getResult() {
+		if (results != null)
+			return results;
+		FitnesseResults loaded = loadedResults == null ? null : loadedResults.get();
+		if (loaded == null) {
+			loaded = loadResults();
+			loadedResults = new SoftReference<FitnesseResults>(loaded);
+		}
+		return loaded;
+	}
+
+	private FitnesseResults loadResults() {
+		File file = new File(run.getRootDir(), ResultsTreeFile.FILE_NAME);
+		FitnesseResults loaded;
+		try {
+			loaded = ResultsTreeFile.read(file, PageNamePool.forJob(run.getParent()));
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Can't read " + file + ", only the summary of the results is available", e);
+			loaded = new FitnesseResults(summary);
+		}
+		loaded.setOwner(run);
+		loaded.setTaskListener(listener);
+		return loaded;
 	}
 
 	/**
@@ -79,7 +138,7 @@ public class FitnesseResultsAction extends AbstractTestResultAction<FitnesseResu
 	 * {@link StaplerProxy}
 	 */
 	public Object getTarget() {
-		return results;
+		return getResult();
 	}
 
 	/**
@@ -100,7 +159,8 @@ public class FitnesseResultsAction extends AbstractTestResultAction<FitnesseResu
 		projectActions.add(new FitnesseProjectAction(job));
 		projectActions.add(new FitnesseHistoryAction(job));
 		this.projectActions = projectActions;
-		this.results.setOwner(run);
+		if (this.results != null)
+			this.results.setOwner(run);
 		return this.projectActions;
 	}
 
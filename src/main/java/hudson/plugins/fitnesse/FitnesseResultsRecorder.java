@@ -7,34 +7,56 @@ import hudson.model.AbstractProject;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+import hudson.plugins.fitnesse.ResultsFileParser.ParsedResults;
 import hudson.tasks.BuildStep;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.servlet.ServletException;
-import javax.xml.transform.TransformerException;
 import jenkins.tasks.SimpleBuildStep;
 import org.apache.commons.io.FilenameUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.xml.sax.SAXException;
 
 public class FitnesseResultsRecorder extends Recorder implements SimpleBuildStep {
 
+	/**
+	 * Maximum number of results files parsed at the same time when
+	 * {@link #getFitnessePathToXmlResultsIn()} matches several files.
+	 */
+	static final int PARSER_THREADS = Integer.getInteger(FitnesseResultsRecorder.class.getName() + ".parserThreads",
+			Runtime.getRuntime().availableProcessors());
+
 	private final String fitnessePathToXmlResultsIn;
+	private boolean compressContentFiles;
 
 	@DataBoundConstructor
 	public FitnesseResultsRecorder(String fitnessePathToXmlResultsIn) {
@@ -48,6 +70,18 @@ public class FitnesseResultsRecorder extends Recorder implements SimpleBuildStep
 		return fitnessePathToXmlResultsIn;
 	}
 
+	/**
+	 * referenced in config.jelly
+	 */
+	public boolean isCompressContentFiles() {
+		return compressContentFiles;
+	}
+
+	@DataBoundSetter
+	public void setCompressContentFiles(boolean compressContentFiles) {
+		this.compressContentFiles = compressContentFiles;
+	}
+
 
 	/**
 	 * {@link BuildStep}
@@ -73,6 +107,7 @@ public class FitnesseResultsRecorder extends Recorder implements SimpleBuildStep
 			if (results.getBuildResult() != null)
 				build.setResult(results.getBuildResult());
 			build.addAction(action);
+			FitnesseHistoryIndex.recordBuild(build, results);
 			return;
 		} catch (InterruptedException e) { //aborted
 			throw e;
@@ -95,19 +130,33 @@ public class FitnesseResultsRecorder extends Recorder implements SimpleBuildStep
 		if (resultsFile.exists()) {
 			// directly configured single file
 			return new FilePath[] { resultsFile };
-		} else {
-			// glob
-			return workingDirectory.list(fitnessePathToXmlResultsIn);
 		}
+		// glob
+		FilePath[] resultsFiles = workingDirectory.list(fitnessePathToXmlResultsIn);
+		FilePath resultsDirectory = resultsFile.getParent();
+		if (resultsFiles.length == 0 && resultsDirectory != null && resultsDirectory.exists()) {
+			// the partitions of the suite run in parallel by FitnesseBuilder
+			resultsFiles = resultsDirectory.list(FitnesseExecutor.getPartitionFileName(resultsFile.getName(), "*"));
+		}
+		return resultsFiles;
 	}
 
 	public FitnesseResults getResults(PrintStream logger, FilePath[] resultsFiles, File rootDir) throws IOException,
-			TransformerException, InterruptedException {
+			SAXException, InterruptedException {
 		List<FitnesseResults> resultsList = new ArrayList<FitnesseResults>();
 
-		for (FilePath filePath : resultsFiles) {
-			FitnesseResults singleResults = getResults(logger, filePath, rootDir);
-			resultsList.add(singleResults);
+		ContentPack contentPack = new ContentPack(new File(rootDir, ContentPack.FILE_NAME));
+		try {
+			if (resultsFiles.length > 1 && PARSER_THREADS > 1) {
+				resultsList.addAll(getResultsInParallel(logger, resultsFiles, rootDir, contentPack));
+			} else {
+				for (FilePath filePath : resultsFiles) {
+					FitnesseResults singleResults = getResults(logger, filePath, rootDir, contentPack);
+					resultsList.add(singleResults);
+				}
+			}
+		} finally {
+			contentPack.close();
 		}
 
 		if (resultsList.isEmpty()) {
@@ -119,8 +168,67 @@ public class FitnesseResultsRecorder extends Recorder implements SimpleBuildStep
 		return CompoundFitnesseResults.createFor(resultsList);
 	}
 
+	/**
+	 * Parses every results file on its own thread, at most
+	 * {@link #PARSER_THREADS} at a time. The results are returned in the order
+	 * of the given files, whatever the order the parsing finished in.
+	 */
+	private List<FitnesseResults> getResultsInParallel(final PrintStream logger, FilePath[] resultsFiles,
+			final File rootDir, final ContentPack contentPack) throws IOException, SAXException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(PARSER_THREADS, resultsFiles.length),
+				new NamingThreadFactory(new DaemonThreadFactory(), "FitNesse results parser"));
+		try {
+			List<Future<FitnesseResults>> futures = new ArrayList<Future<FitnesseResults>>();
+			for (final FilePath filePath : resultsFiles) {
+				futures.add(executor.submit(new Callable<FitnesseResults>() {
+					public FitnesseResults call() throws Exception {
+						return getResults(logger, filePath, rootDir, contentPack);
+					}
+				}));
+			}
+
+			List<FitnesseResults> resultsList = new ArrayList<FitnesseResults>();
+			for (Future<FitnesseResults> future : futures) {
+				try {
+					resultsList.add(future.get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					if (cause instanceof SAXException)
+						throw (SAXException) cause;
+					if (cause instanceof InterruptedException)
+						throw (InterruptedException) cause;
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					throw new IOException(cause);
+				}
+			}
+			return resultsList;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	public FitnesseResults getResults(PrintStream logger, FilePath resultsFile, File rootDir) throws IOException,
-			TransformerException, InterruptedException {
+			SAXException, InterruptedException {
+		ContentPack contentPack = new ContentPack(new File(rootDir, ContentPack.FILE_NAME));
+		try {
+			return getResults(logger, resultsFile, rootDir, contentPack);
+		} finally {
+			contentPack.close();
+		}
+	}
+
+	/**
+	 * The html content of the pages is appended to the given pack, which may be
+	 * shared by several results files parsed at the same time.
+	 */
+	private FitnesseResults getResults(PrintStream logger, FilePath resultsFile, File rootDir, ContentPack contentPack)
+			throws IOException, SAXException, InterruptedException {
+		if (resultsFile.isRemote()) {
+			return getRemoteResults(logger, resultsFile, rootDir, contentPack);
+		}
 		InputStream resultsInputStream = null;
 		try {
 			logger.println("Reading results as " + Charset.defaultCharset().displayName() + " from "
@@ -132,8 +240,8 @@ public class FitnesseResultsRecorder extends Recorder implements SimpleBuildStep
 
 			logger.println("Parsing results... ");
 			NativePageCountsParser pageCountsParser = new NativePageCountsParser();
-			NativePageCounts pageCounts = pageCountsParser.parse(resultsInputStream, resultFileName, logger, rootDir.getAbsolutePath()
-					+ System.getProperty("file.separator"));
+			NativePageCounts pageCounts = pageCountsParser.parse(resultsInputStream, resultFileName, logger, contentPack,
+					compressContentFiles);
 			logger.println("resultsFile: " + getFitnessePathToXmlResultsIn());
 
 			logger.println("Got results: " + pageCounts.getSummary());
@@ -151,6 +259,54 @@ public class FitnesseResultsRecorder extends Recorder implements SimpleBuildStep
 		}
 	}
 
+	/**
+	 * Parses a results file on the agent holding it, so that the raw results
+	 * do not have to cross the channel. The content pack written there is then
+	 * fetched as a compressed archive and appended to the pack of the build.
+	 */
+	private FitnesseResults getRemoteResults(PrintStream logger, FilePath resultsFile, File rootDir,
+			ContentPack contentPack) throws IOException, InterruptedException {
+		logger.println("Parsing results on agent from " + resultsFile.getRemote());
+		String resultFileName = FilenameUtils.getName(resultsFile.getRemote());
+		ParsedResults parsed = resultsFile.act(new ResultsFileParser(resultFileName, new StreamTaskListener(logger),
+				compressContentFiles));
+
+		FilePath remoteContentDir = new FilePath(resultsFile.getChannel(), parsed.contentDir);
+		FilePath localContentDir = new FilePath(Files.createTempDirectory(rootDir.toPath(), "fitnesse-results").toFile());
+		try {
+			remoteContentDir.copyRecursiveTo(localContentDir);
+			File remotePack = new File(localContentDir.getRemote(), ContentPack.FILE_NAME);
+			long base = remotePack.exists() ? contentPack.append(remotePack) : 0;
+			logger.println("Fetched " + remotePack.length() + " bytes of content from agent");
+
+			Map<Counts, Counts> moved = new IdentityHashMap<Counts, Counts>();
+			Counts summary = moveToContentPack(parsed.summary, contentPack, base, moved);
+			List<Counts> details = new ArrayList<Counts>();
+			for (Counts detail : parsed.details) {
+				details.add(moveToContentPack(detail, contentPack, base, moved));
+			}
+			logger.println("Got results: " + summary);
+			return new FitnesseResults(summary, details);
+		} finally {
+			localContentDir.deleteRecursive();
+			remoteContentDir.deleteRecursive();
+		}
+	}
+
+	private static Counts moveToContentPack(Counts counts, ContentPack contentPack, long base,
+			Map<Counts, Counts> moved) {
+		if (counts == null || !counts.isContentPacked())
+			return counts;
+		if (moved.containsKey(counts))
+			return moved.get(counts);
+
+		Counts movedCounts = new Counts(counts.page, counts.resultsDate, counts.right, counts.wrong, counts.ignored,
+				counts.exceptions, counts.duration, contentPack.getFile().getAbsolutePath(), counts.contentOffset
+						+ base, counts.contentLength);
+		moved.put(counts, movedCounts);
+		return movedCounts;
+	}
+
 	/**
 	 * {@link Publisher}
 	 */
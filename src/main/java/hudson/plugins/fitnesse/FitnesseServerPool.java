@@ -0,0 +1,257 @@
+package hudson.plugins.fitnesse;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FitNesse servers kept running on a node between builds, so that a build
+ * neither waits for a new JVM nor for the wiki to warm up. The pool lives in
+ * the JVM of the node: the servers are started by it rather than by the
+ * build, whose processes are killed when it completes, and write to a log
+ * file of their own.
+ * <p>
+ * A server is found by the command starting it apart from its port: the
+ * java executable, options, fitnesse.jar, FitNesseRoot and working directory.
+ * Asked for any port, the pool gives the server it holds whatever its port,
+ * or starts one on a free port.
+ * <p>
+ * Between builds a server is reset: it is stopped instead of being reused if
+ * the build using it failed or was aborted, once it served
+ * {@link #MAX_USES} builds, or after being idle for {@link #MAX_IDLE_MINUTES}.
+ * Idle servers are looked for every minute once the pool is used, and the
+ * log file of a server is deleted when it is stopped.
+ */
+final class FitnesseServerPool {
+	static final int MAX_USES = Integer.getInteger(FitnesseServerPool.class.getName() + ".maxUses", 50);
+	static final int MAX_IDLE_MINUTES = Integer.getInteger(FitnesseServerPool.class.getName() + ".maxIdleMinutes", 30);
+
+	private static final Map<String, Server> SERVERS = new HashMap<String, Server>();
+
+	/** Stops idle servers, started with the first server of the pool */
+	private static ScheduledExecutorService idleServersStopper;
+
+	private FitnesseServerPool() {
+	}
+
+	/**
+	 * @return the command without the port, identifying the servers that can
+	 *         be used in place of each other
+	 */
+	static String getServerKey(List<String> cmd, String workingDirectory) {
+		List<String> key = new ArrayList<String>(cmd);
+		int portOption = key.indexOf("-p");
+		if (portOption != -1 && portOption + 1 < key.size())
+			key.subList(portOption, portOption + 2).clear();
+		return workingDirectory + " " + key;
+	}
+
+	/**
+	 * @param port
+	 *            the port of the server, or 0 for any port
+	 * @return a server running the given command, started unless the pool
+	 *         already holds one, or null if the pool holds one still used by a
+	 *         build that runs on another port or is to be stopped
+	 */
+	static synchronized Lease acquire(String key, List<String> cmd, int port, File workingDirectory)
+			throws IOException {
+		startStoppingIdleServers();
+		stopIdleServers(System.currentTimeMillis());
+		Server server = SERVERS.get(key);
+		if (server != null && !server.isAlive()) {
+			stop(key, server);
+			server = null;
+		}
+		boolean anyPort = port == 0;
+		if (server != null && server.leases == 0 && ((!anyPort && server.port != port) || server.uses >= MAX_USES)) {
+			stop(key, server);
+			server = null;
+		}
+		if (server != null) {
+			if (server.poisoned || (!anyPort && server.port != port))
+				return null;
+			server.leases++;
+			server.uses++;
+			return new Lease(key, server.port, true, server.log.getPath());
+		}
+		if (anyPort) {
+			port = FitnesseExecutor.findFreePort();
+			cmd = withPort(cmd, port);
+		}
+
+		// an idle server of another configuration would answer in place of the new one
+		for (Iterator<Map.Entry<String, Server>> it = SERVERS.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Server> other = it.next();
+			if (other.getValue().port == port && other.getValue().leases == 0) {
+				other.getValue().destroy();
+				it.remove();
+			}
+		}
+
+		File log = File.createTempFile("fitnesse-server", ".log");
+		Process process = new ProcessBuilder(cmd).directory(workingDirectory).redirectErrorStream(true)
+				.redirectOutput(log).start();
+		server = new Server(process, port, log);
+		SERVERS.put(key, server);
+		return new Lease(key, port, false, log.getPath());
+	}
+
+	/**
+	 * @return the command with the value of its -p option replaced by the port
+	 */
+	static List<String> withPort(List<String> cmd, int port) {
+		List<String> withPort = new ArrayList<String>(cmd);
+		int portOption = withPort.indexOf("-p");
+		if (portOption != -1 && portOption + 1 < withPort.size())
+			withPort.set(portOption + 1, Integer.toString(port));
+		return withPort;
+	}
+
+	/**
+	 * Gives a server back to the pool, stopping it once no build uses it if it
+	 * can't be trusted any more.
+	 */
+	static synchronized void release(String key, boolean healthy) {
+		Server server = SERVERS.get(key);
+		if (server == null)
+			return;
+		server.leases--;
+		server.idleSince = System.currentTimeMillis();
+		if (!healthy)
+			server.poisoned = true;
+		if (server.leases <= 0 && (server.poisoned || !server.isAlive()))
+			stop(key, server);
+	}
+
+	private static void startStoppingIdleServers() {
+		if (idleServersStopper != null)
+			return;
+		idleServersStopper = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory(
+				new DaemonThreadFactory(), "FitNesse server pool"));
+		idleServersStopper.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				stopIdleServers(System.currentTimeMillis());
+			}
+		}, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Stops the servers no build used for more than {@link #MAX_IDLE_MINUTES}.
+	 */
+	static synchronized void stopIdleServers(long now) {
+		long maxIdleMillis = MAX_IDLE_MINUTES * 60L * 1000L;
+		for (Iterator<Server> it = SERVERS.values().iterator(); it.hasNext();) {
+			Server server = it.next();
+			if (server.leases <= 0 && now - server.idleSince > maxIdleMillis) {
+				server.destroy();
+				it.remove();
+			}
+		}
+	}
+
+	private static void stop(String key, Server server) {
+		server.destroy();
+		SERVERS.remove(key);
+	}
+
+	private static final class Server {
+		private final Process process;
+		private final int port;
+		private final File log;
+		private int leases = 1;
+		private int uses = 1;
+		private long idleSince;
+		/** A build using it failed, it is stopped once no build uses it */
+		private boolean poisoned;
+
+		Server(Process process, int port, File log) {
+			this.process = process;
+			this.port = port;
+			this.log = log;
+		}
+
+		void destroy() {
+			process.destroy();
+			// the process may still hold the log on Windows
+			if (!log.delete())
+				log.deleteOnExit();
+		}
+
+		boolean isAlive() {
+			try {
+				process.exitValue();
+				return false;
+			} catch (IllegalThreadStateException e) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * A server of the pool used by a build.
+	 */
+	static final class Lease implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final String key;
+		final int port;
+		final boolean reused;
+		final String log;
+
+		Lease(String key, int port, boolean reused, String log) {
+			this.key = key;
+			this.port = port;
+			this.reused = reused;
+			this.log = log;
+		}
+	}
+
+	static final class Acquire extends MasterToSlaveCallable<Lease, IOException> {
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+		private final List<String> cmd;
+		private final int port;
+		private final String workingDirectory;
+
+		Acquire(String key, List<String> cmd, int port, String workingDirectory) {
+			this.key = key;
+			this.cmd = new ArrayList<String>(cmd);
+			this.port = port;
+			this.workingDirectory = workingDirectory;
+		}
+
+		public Lease call() throws IOException {
+			return acquire(key, cmd, port, new File(workingDirectory));
+		}
+	}
+
+	static final class Release extends MasterToSlaveCallable<Void, IOException> {
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+		private final boolean healthy;
+
+		Release(String key, boolean healthy) {
+			this.key = key;
+			this.healthy = healthy;
+		}
+
+		public Void call() {
+			release(key, healthy);
+			return null;
+		}
+	}
+}
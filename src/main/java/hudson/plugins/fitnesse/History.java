@@ -23,8 +23,11 @@
  */
 package hudson.plugins.fitnesse;
 
+import hudson.Extension;
 import hudson.model.AbstractBuild;
+import hudson.model.Job;
 import hudson.model.Run;
+import hudson.model.listeners.RunListener;
 import hudson.tasks.test.Messages;
 import hudson.util.ChartUtil;
 import hudson.util.ColorPalette;
@@ -37,7 +40,14 @@ import java.awt.Color;
 import java.awt.Paint;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
 
 import jenkins.model.Jenkins;
 
@@ -58,6 +68,16 @@ import org.jfree.ui.RectangleInsets;
  * @since 1.320
  */
 public class History {
+	/** Maximum number of builds looked at, the latest ones */
+	static final int MAX_DEPTH = Integer.getInteger(History.class.getName() + ".maxDepth", 200);
+
+	/** Maximum number of trends kept by job, the latest used ones */
+	static final int MAX_SERIES_PER_JOB = 8;
+
+	/** Trends of the jobs by id of the results, see {@link #getTrend()} */
+	private static final Map<Job<?, ?>, Map<String, TrendSeries>> TREND_SERIES =
+			new WeakHashMap<Job<?, ?>, Map<String, TrendSeries>>();
+
 	private final FitnesseResults testObject;
 	private final int graphWidth;
 	private final int graphHeight;
@@ -73,18 +93,19 @@ public class History {
 	}
 
 	public boolean historyAvailable() {
-		Iterator<?> builds = testObject.getRun().getParent().getBuilds().iterator();
-		if (!builds.hasNext()) {
-			return false;
-		} else {
-			builds.next();
-			return builds.hasNext();
-		}
+		Run<?, ?> lastBuild = testObject.getRun().getParent().getLastBuild();
+		return lastBuild != null && lastBuild.getPreviousBuild() != null;
 	}
 
+	/**
+	 * @return the results of the latest {@link #MAX_DEPTH} builds, older
+	 *         builds are not loaded
+	 */
 	public List<FitnesseResults> getList() {
 		List<FitnesseResults> list = new ArrayList<FitnesseResults>();
-		for (Run<?,?> b : testObject.getRun().getParent().getBuilds()) {
+		int depth = 0;
+		for (Run<?, ?> b = testObject.getRun().getParent().getLastBuild(); b != null && depth < MAX_DEPTH; b = b
+				.getPreviousBuild(), depth++) {
 			if (b.isBuilding())
 				continue;
 			FitnesseResults o = (FitnesseResults) testObject.getResultInRun(b);
@@ -98,6 +119,36 @@ public class History {
 		return list;
 	}
 
+	/**
+	 * @return the trend of the results over the latest {@link #MAX_DEPTH}
+	 *         completed builds, the latest first, extended with the builds
+	 *         completed since the last call
+	 */
+	List<TrendPoint> getTrend() {
+		Job<?, ?> job = testObject.getRun().getParent();
+		TrendSeries series;
+		synchronized (TREND_SERIES) {
+			Map<String, TrendSeries> seriesOfJob = TREND_SERIES.get(job);
+			if (seriesOfJob == null) {
+				seriesOfJob = new LinkedHashMap<String, TrendSeries>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, TrendSeries> eldest) {
+						return size() > MAX_SERIES_PER_JOB;
+					}
+				};
+				TREND_SERIES.put(job, seriesOfJob);
+			}
+			series = seriesOfJob.get(testObject.getId());
+			if (series == null) {
+				series = new TrendSeries();
+				seriesOfJob.put(testObject.getId(), series);
+			}
+		}
+		return series.update(job.getLastCompletedBuild(), testObject);
+	}
+
 	/**
 	 * Graph of duration of tests over time.
 	 */
@@ -105,13 +156,13 @@ public class History {
 		return new GraphImpl("seconds") {
 			protected DataSetBuilder<String, ChartLabel> createDataSet() {
 				DataSetBuilder<String, ChartLabel> data = new DataSetBuilder<String, ChartLabel>();
-				for (FitnesseResults o : getList()) {
-					data.add(((double) o.getDuration()) / (1000), "", new ChartLabel(o) {
+				for (TrendPoint o : getTrend()) {
+					data.add(((double) o.duration) / (1000), "", new ChartLabel(o) {
 						@Override
 						public Color getColor() {
-							if (o.getFailCount() > 0)
+							if (o.fail > 0)
 								return ColorPalette.RED;
-							else if (o.getSkipCount() > 0)
+							else if (o.skip > 0)
 								return ColorPalette.YELLOW;
 							else
 								return ColorPalette.BLUE;
@@ -122,7 +173,7 @@ public class History {
 			}
 
 			protected String generateToolTip(ChartLabel label, int row, int column) {
-				return label.o.getRun().getDisplayName() + " : " + label.o.getDurationString();
+				return label.o.displayName + " : " + label.o.durationString;
 			}
 		};
 	}
@@ -135,23 +186,23 @@ public class History {
 			protected DataSetBuilder<String, ChartLabel> createDataSet() {
 				DataSetBuilder<String, ChartLabel> data = new DataSetBuilder<String, ChartLabel>();
 
-				for (FitnesseResults o : getList()) {
-					data.add(o.getPassCount(), "2Passed", new ChartLabel(o));
-					data.add(o.getFailCount(), "1Failed", new ChartLabel(o));
-					data.add(o.getSkipCount(), "0Skipped", new ChartLabel(o));
+				for (TrendPoint o : getTrend()) {
+					data.add(o.pass, "2Passed", new ChartLabel(o));
+					data.add(o.fail, "1Failed", new ChartLabel(o));
+					data.add(o.skip, "0Skipped", new ChartLabel(o));
 				}
 				return data;
 			}
 
 			protected String generateToolTip(ChartLabel label, int row, int column) {
-				String build = label.o.getRun().getDisplayName() + " : ";
+				String build = label.o.displayName + " : ";
 				switch (row) {
 				case 0:
-					return String.valueOf(Messages.AbstractTestResultAction_skip(build, label.o.getSkipCount()));
+					return String.valueOf(Messages.AbstractTestResultAction_skip(build, label.o.skip));
 				case 1:
-					return String.valueOf(Messages.AbstractTestResultAction_fail(build, label.o.getFailCount()));
+					return String.valueOf(Messages.AbstractTestResultAction_fail(build, label.o.fail));
 				default:
-					return String.valueOf(Messages.AbstractTestResultAction_test(build, label.o.getTotalCount()));
+					return String.valueOf(Messages.AbstractTestResultAction_test(build, label.o.total));
 				}
 			}
 		};
@@ -243,29 +294,18 @@ public class History {
 	}
 
 	class ChartLabel implements Comparable<ChartLabel> {
-		FitnesseResults o;
-		String url;
+		TrendPoint o;
 
-		public ChartLabel(FitnesseResults o) {
+		public ChartLabel(TrendPoint o) {
 			this.o = o;
-			this.url = null;
 		}
 
 		public String getUrl() {
-			if (this.url == null)
-				generateUrl();
-			return url;
-		}
-
-		private void generateUrl() {
-			Run<?,?> build = o.getRun();
-			String buildLink = build.getUrl();
-			String actionUrl = o.getTestResultAction().getUrlName();
-			this.url = Jenkins.getActiveInstance().getRootUrlFromRequest() + buildLink + actionUrl + o.getUrl();
+			return Jenkins.getActiveInstance().getRootUrlFromRequest() + o.url;
 		}
 
 		public int compareTo(ChartLabel that) {
-			return this.o.getRun().number - that.o.getRun().number;
+			return this.o.number - that.o.number;
 		}
 
 		@Override
@@ -288,14 +328,119 @@ public class History {
 		
 		@Override
 		public String toString() {
-			Run<?, ?> run = o.getRun();
-			String l = run.getDisplayName();
-			String s = run instanceof AbstractBuild ? ((AbstractBuild) run).getBuiltOnStr() : null;
-			if (s != null)
-				l += ' ' + s;
+			String l = o.displayName;
+			if (o.builtOn != null)
+				l += ' ' + o.builtOn;
 			return l;
 		}
 		
 	}
 
+	/**
+	 * What the graphs show of the results of a build, taken once so that they
+	 * can be drawn without loading the build again.
+	 */
+	static final class TrendPoint {
+		final int number;
+		final String displayName;
+		final String builtOn;
+		final String url;
+		final float duration;
+		final String durationString;
+		final int pass;
+		final int fail;
+		final int skip;
+		final int total;
+
+		TrendPoint(Run<?, ?> build, FitnesseResults o) {
+			this.number = build.getNumber();
+			this.displayName = build.getDisplayName();
+			this.builtOn = build instanceof AbstractBuild ? ((AbstractBuild<?, ?>) build).getBuiltOnStr() : null;
+			this.url = build.getUrl() + o.getTestResultAction().getUrlName() + o.getUrl();
+			this.duration = o.getDuration();
+			this.durationString = o.getDurationString();
+			this.pass = o.getPassCount();
+			this.fail = o.getFailCount();
+			this.skip = o.getSkipCount();
+			this.total = o.getTotalCount();
+		}
+	}
+
+	/**
+	 * The trend of a job, by build number. Only builds completed after the
+	 * last completed build seen so far are loaded when it is extended, and
+	 * builds that were still running are checked again on every update.
+	 */
+	static final class TrendSeries {
+		private final NavigableMap<Integer, TrendPoint> points = new TreeMap<Integer, TrendPoint>();
+		/** Builds that were still running while later builds had completed */
+		private final NavigableSet<Integer> running = new TreeSet<Integer>();
+		private int lastCompletedBuild;
+
+		synchronized List<TrendPoint> update(Run<?, ?> lastCompleted, FitnesseResults testObject) {
+			if (lastCompleted == null)
+				return new ArrayList<TrendPoint>(points.descendingMap().values());
+
+			// older builds may complete after newer ones
+			Job<?, ?> job = lastCompleted.getParent();
+			for (Iterator<Integer> it = running.iterator(); it.hasNext();) {
+				Run<?, ?> b = job.getBuildByNumber(it.next());
+				if (b == null || !b.isBuilding()) {
+					it.remove();
+					add(b, testObject);
+				}
+			}
+			if (lastCompleted.getNumber() > lastCompletedBuild) {
+				int oldest = Math.max(lastCompletedBuild, lastCompleted.getNumber() - MAX_DEPTH);
+				for (Run<?, ?> b = lastCompleted; b != null && b.getNumber() > oldest; b = b.getPreviousBuild()) {
+					if (b.isBuilding())
+						running.add(b.getNumber());
+					else
+						add(b, testObject);
+				}
+				lastCompletedBuild = lastCompleted.getNumber();
+
+				points.headMap(lastCompletedBuild - MAX_DEPTH, true).clear();
+				running.headSet(lastCompletedBuild - MAX_DEPTH, true).clear();
+			}
+			return new ArrayList<TrendPoint>(points.descendingMap().values());
+		}
+
+		private void add(Run<?, ?> b, FitnesseResults testObject) {
+			if (b == null)
+				return;
+			FitnesseResults o = (FitnesseResults) testObject.getResultInRun(b);
+			if (o != null) {
+				if (o.getOwner() == null) {
+					o.setOwner(b);
+				}
+				points.put(b.getNumber(), new TrendPoint(b, o));
+			}
+		}
+
+		synchronized void remove(int buildNumber) {
+			points.remove(buildNumber);
+			running.remove(buildNumber);
+		}
+	}
+
+	/**
+	 * Drops deleted builds from the cached trends.
+	 */
+	@Extension
+	public static class TrendListener extends RunListener<Run<?, ?>> {
+		@Override
+		public void onDeleted(Run<?, ?> build) {
+			List<TrendSeries> series = new ArrayList<TrendSeries>();
+			synchronized (TREND_SERIES) {
+				Map<String, TrendSeries> seriesOfJob = TREND_SERIES.get(build.getParent());
+				if (seriesOfJob != null)
+					series.addAll(seriesOfJob.values());
+			}
+			for (TrendSeries trend : series) {
+				trend.remove(build.getNumber());
+			}
+		}
+	}
+
 }
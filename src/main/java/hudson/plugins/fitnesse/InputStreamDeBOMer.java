@@ -1,11 +1,10 @@
 package hudson.plugins.fitnesse;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
 
 /**
  * The "need" for a DeBOMer is explained at 
@@ -21,24 +20,32 @@ public class InputStreamDeBOMer {
 	static final byte[] UTF16BE_BOM = new byte[] { (byte) 0xFE, (byte) 0xFF };
 	static final byte[] UTF32BE_BOM = new byte[] { (byte) 0x00, (byte) 0x00, (byte) 0xFE, (byte) 0xFF };
 
+	static final int MAX_BOM_LENGTH = 4;
+
+	/**
+	 * Peeks at the first bytes of the given stream only: the returned stream
+	 * reads the remaining content lazily from the given one.
+	 */
 	public static InputStream deBOM(InputStream in) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		IOUtils.copy(in, baos);
-		byte[] bytes = baos.toByteArray();
-		int skip = skip_bom(UTF8_BOM, bytes);
+		PushbackInputStream pushbackIn = new PushbackInputStream(in, MAX_BOM_LENGTH);
+		byte[] bytes = new byte[MAX_BOM_LENGTH];
+		int length = IOUtils.read(pushbackIn, bytes);
+		int skip = skip_bom(UTF8_BOM, bytes, length);
 		if (skip == 0)
-			skip = skip_bom(UTF32LE_BOM, bytes);
+			skip = skip_bom(UTF32LE_BOM, bytes, length);
 		if (skip == 0)
-			skip = skip_bom(UTF16LE_BOM, bytes);
+			skip = skip_bom(UTF16LE_BOM, bytes, length);
 		if (skip == 0)
-			skip = skip_bom(UTF16BE_BOM, bytes);
+			skip = skip_bom(UTF16BE_BOM, bytes, length);
 		if (skip == 0)
-			skip = skip_bom(UTF32BE_BOM, bytes);
-		return new ByteArrayInputStream(bytes, skip, bytes.length - skip);
+			skip = skip_bom(UTF32BE_BOM, bytes, length);
+		if (length > skip)
+			pushbackIn.unread(bytes, skip, length - skip);
+		return pushbackIn;
 	}
 
-	private static int skip_bom(byte[] bom, byte[] bytes) {
-		if (bytes.length < bom.length)
+	private static int skip_bom(byte[] bom, byte[] bytes, int length) {
+		if (length < bom.length)
 			return 0;
 
 		for (int i = 0; i < bom.length; ++i) {
@@ -48,4 +55,4 @@ public class InputStreamDeBOMer {
 
 		return bom.length;
 	}
-}
\ No newline at end of file
+}
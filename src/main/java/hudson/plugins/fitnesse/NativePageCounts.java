@@ -11,6 +11,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.lang.StringUtils;
 import org.xml.sax.Attributes;
@@ -28,6 +29,8 @@ public class NativePageCounts extends DefaultHandler {
 	public static final String DURATION = "duration";
 	public static final String SUMMARY = "summary";
 	public static final String DETAIL = "detail";
+	/** Extension of the content files written gzipped */
+	public static final String GZIP_EXTENSION = ".gz";
 	private static final List<String> COUNTABLE = Arrays.asList(new String[] { SUMMARY, DETAIL });
 
 	private Counts summary;
@@ -36,14 +39,40 @@ public class NativePageCounts extends DefaultHandler {
 	private final String rootDirName;
 	private final PrintStream logger;
 	private final String resultFileName;
+	private final boolean compressContent;
+	private final ContentPack contentPack;
 
 	public NativePageCounts(PrintStream logger, String resultFileName, String rootDirName) {
+		this(logger, resultFileName, rootDirName, false);
+	}
+
+	/**
+	 * @param compressContent
+	 *          whether to write the content files gzipped, see
+	 *          {@link #GZIP_EXTENSION}
+	 */
+	public NativePageCounts(PrintStream logger, String resultFileName, String rootDirName, boolean compressContent) {
 		this.logger = logger;
 		this.rootDirName = rootDirName;
 		this.resultFileName = resultFileName;
+		this.compressContent = compressContent;
+		this.contentPack = null;
 		logger.println("Write fitnesse results to: " + rootDirName);
 	}
 
+	/**
+	 * Appends the content of all pages to the given pack instead of writing one
+	 * file per page.
+	 */
+	public NativePageCounts(PrintStream logger, String resultFileName, ContentPack contentPack, boolean compressContent) {
+		this.logger = logger;
+		this.rootDirName = null;
+		this.resultFileName = resultFileName;
+		this.compressContent = compressContent;
+		this.contentPack = contentPack;
+		logger.println("Write fitnesse results to: " + contentPack.getFile());
+	}
+
 	/**
 	 * Stores the actual fitnesse results. We do not want to merge them into
 	 * build.xml since the results may have size of several MB. E.g. in a suite
@@ -58,36 +87,57 @@ public class NativePageCounts extends DefaultHandler {
 	public void startElement(String uri, String localName, String qName, Attributes attributes) {
 
 		if (COUNTABLE.contains(qName)) {
-			String targetPage;
-			if (qName.equals(SUMMARY)) {
-				targetPage = resultFileName;
-			} else {
-				String page = attributes.getValue(PAGE);
-				String pseudoPage = attributes.getValue(PSEUDO_PAGE);
-				targetPage = page == null || page.equals("") ? pseudoPage : page;
-			}
+			addCounts(qName, attributes.getValue(PAGE), attributes.getValue(PSEUDO_PAGE),
+					attributes.getValue(APPROX_RESULT_DATE), attributes.getValue(RIGHT), attributes.getValue(WRONG),
+					attributes.getValue(IGNORED), attributes.getValue(EXCEPTIONS), attributes.getValue(DURATION),
+					attributes.getValue(CONTENT));
+		}
+	}
 
-			String rightStr = attributes.getValue(RIGHT);
-			String wrongStr = attributes.getValue(WRONG);
-			String ignoredStr = attributes.getValue(IGNORED);
-			String exceptionsStr = attributes.getValue(EXCEPTIONS);
-			String durationStr = attributes.getValue(DURATION);
-			int right = Integer.parseInt(rightStr);
-			int wrong = Integer.parseInt(wrongStr);
-			int ignored = Integer.parseInt(ignoredStr);
-			int exceptions = Integer.parseInt(exceptionsStr);
-			int duration = StringUtils.isEmpty(durationStr) ? 0 : Integer.parseInt(durationStr); //to manage previous version of FitNesse
-			String resultsDate = qName.equals(SUMMARY) ? "" : resultsDateOf(attributes.getValue(APPROX_RESULT_DATE));
-
-			String contentFileName = writeFitnesseResultFiles(targetPage, attributes.getValue(CONTENT));
-
-			Counts counts = new Counts(targetPage, resultsDate, right, wrong, ignored, exceptions, duration, contentFileName);
-			allCounts.put(counts.page, counts);
-
-			if (qName.equals(SUMMARY)) {
-				summary = counts;
+	/**
+	 * Collects the counts of a {@link #SUMMARY} or {@link #DETAIL} element,
+	 * either read from the attributes of the transformed results or directly
+	 * from the raw results by {@link RawResultsHandler}.
+	 */
+	void addCounts(String qName, String page, String pseudoPage, String approxResultDate, String rightStr,
+			String wrongStr, String ignoredStr, String exceptionsStr, String durationStr, String content) {
+		String targetPage;
+		if (qName.equals(SUMMARY)) {
+			targetPage = resultFileName;
+		} else {
+			targetPage = page == null || page.equals("") ? pseudoPage : page;
+		}
+
+		int right = Integer.parseInt(rightStr);
+		int wrong = Integer.parseInt(wrongStr);
+		int ignored = Integer.parseInt(ignoredStr);
+		int exceptions = Integer.parseInt(exceptionsStr);
+		int duration = StringUtils.isEmpty(durationStr) ? 0 : Integer.parseInt(durationStr); //to manage previous version of FitNesse
+		String resultsDate = qName.equals(SUMMARY) ? "" : resultsDateOf(approxResultDate);
+
+		Counts counts;
+		if (contentPack != null) {
+			Long contentOffset = null;
+			int contentLength = 0;
+			byte[] packedContent = packContent(targetPage, content);
+			if (packedContent != null) {
+				contentOffset = appendToContentPack(targetPage, packedContent);
+				contentLength = packedContent.length;
 			}
+			String contentFileName = contentOffset == null ? null : contentPack.getFile().getAbsolutePath();
+			counts = new Counts(targetPage, resultsDate, right, wrong, ignored, exceptions, duration, contentFileName,
+					contentOffset, contentLength);
+		} else {
+			String contentFileName = writeFitnesseResultFiles(targetPage, content);
+			counts = new Counts(targetPage, resultsDate, right, wrong, ignored, exceptions, duration, contentFileName);
+		}
+		if (qName.equals(SUMMARY)) {
+			summary = counts;
+			// the raw results report the summary after the pages: never let it replace a page
+			if (allCounts.containsKey(counts.page))
+				return;
 		}
+		allCounts.put(counts.page, counts);
 	}
 
 	public String resultsDateOf(String approxResultDate) {
@@ -140,8 +190,17 @@ public class NativePageCounts extends DefaultHandler {
 		// stores the file-path where to find the actual fitnesse result (html)
 		public final String contentFile;
 
+		// where the result is found in contentFile when it is a ContentPack, null for a file of its own
+		public final Long contentOffset;
+		public final int contentLength;
+
 		public Counts(String page, String resultsDate, int right, int wrong, int ignored, int exceptions, int duration,
 				String contentFile) {
+			this(page, resultsDate, right, wrong, ignored, exceptions, duration, contentFile, null, 0);
+		}
+
+		public Counts(String page, String resultsDate, int right, int wrong, int ignored, int exceptions, int duration,
+				String contentFile, Long contentOffset, int contentLength) {
 			this.page = page;
 			this.resultsDate = resultsDate;
 			this.right = right;
@@ -150,6 +209,12 @@ public class NativePageCounts extends DefaultHandler {
 			this.exceptions = exceptions;
 			this.duration = duration;
 			this.contentFile = contentFile;
+			this.contentOffset = contentOffset;
+			this.contentLength = contentLength;
+		}
+
+		public boolean isContentPacked() {
+			return contentOffset != null;
 		}
 
 		public Date resultsDateAsDate() throws ParseException {
@@ -165,6 +230,40 @@ public class NativePageCounts extends DefaultHandler {
 
 	}
 
+	/**
+	 * Encodes the content of a page like the separate files are written,
+	 * gzipped if required.
+	 */
+	private byte[] packContent(String pageName, String htmlContent) {
+		if (null == htmlContent) {
+			logger.println(" Could not find content for page: " + pageName);
+			return null;
+		}
+		byte[] bytes = htmlContent.getBytes(Charset.forName("ISO-8859-1"));
+		if (!compressContent)
+			return bytes;
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try {
+			GZIPOutputStream out = new GZIPOutputStream(compressed);
+			out.write(bytes);
+			out.close();
+		} catch (IOException e) {
+			// can't happen when writing to memory
+			return bytes;
+		}
+		return compressed.toByteArray();
+	}
+
+	private Long appendToContentPack(String pageName, byte[] packedContent) {
+		try {
+			return contentPack.append(packedContent);
+		} catch (IOException e) {
+			logger.println("Error while writing page " + pageName + " to " + contentPack.getFile() + "\n" + e.toString());
+			return null;
+		}
+	}
+
 	/**
 	 * Gets a parsed fitnesse result and writes it to separate file. Putting the
 	 * fitnesse result in a separate file as performance reasons. E.g. for a huge
@@ -181,11 +280,16 @@ public class NativePageCounts extends DefaultHandler {
 			return null;
 		}
 		BufferedWriter out = null;
-		String fileName = buildOutputFileNameToAvoidDuplicates(rootDirName + pageName);
+		String fileName = buildOutputFileNameToAvoidDuplicates(rootDirName + pageName,
+				compressContent ? GZIP_EXTENSION : "");
 
 		try {
 			// Create separate file for every test in a suite
-			Writer fstream = new OutputStreamWriter(new FileOutputStream(fileName), Charset.forName("ISO-8859-1"));
+			OutputStream fileStream = new FileOutputStream(fileName);
+			if (compressContent) {
+				fileStream = new GZIPOutputStream(fileStream);
+			}
+			Writer fstream = new OutputStreamWriter(fileStream, Charset.forName("ISO-8859-1"));
 			out = new BufferedWriter(fstream);
 			out.write(htmlContent);
 			logger.println(" File: " + fileName + " wrote");
@@ -204,14 +308,26 @@ public class NativePageCounts extends DefaultHandler {
 		return null;
 	}
 
-	private String buildOutputFileNameToAvoidDuplicates(String outputFilePath) {
+	static String buildOutputFileNameToAvoidDuplicates(String outputFilePath) {
+		return buildOutputFileNameToAvoidDuplicates(outputFilePath, "");
+	}
+
+	/**
+	 * Creates the file atomically, so that results files parsed at the same
+	 * time never pick the same name for a page.
+	 */
+	static String buildOutputFileNameToAvoidDuplicates(String outputFilePath, String extension) {
 		int i = 1;
-		String outputFileNameWithoutDuplicates = outputFilePath;
+		String outputFileNameWithoutDuplicates = outputFilePath + extension;
 
-		File testOutputFile = new File(outputFilePath);
-		while (testOutputFile.exists())  {
-			outputFileNameWithoutDuplicates = outputFilePath + "_" + i++;
-			testOutputFile = new File(outputFileNameWithoutDuplicates);
+		File testOutputFile = new File(outputFileNameWithoutDuplicates);
+		try {
+			while (!testOutputFile.createNewFile()) {
+				outputFileNameWithoutDuplicates = outputFilePath + "_" + i++ + extension;
+				testOutputFile = new File(outputFileNameWithoutDuplicates);
+			}
+		} catch (IOException e) {
+			// reported when writing to the file
 		}
 		return outputFileNameWithoutDuplicates;
 	}
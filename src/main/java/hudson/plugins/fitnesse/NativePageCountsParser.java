@@ -4,19 +4,43 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 
+import javax.xml.parsers.SAXParser;
 import javax.xml.transform.Result;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.stream.StreamSource;
 
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
 public class NativePageCountsParser {
 
+	/**
+	 * Reads the raw results in a single pass, see {@link RawResultsHandler}.
+	 * Produces the same counts as feeding the result of
+	 * {@link #transformRawResults(InputStream, Result)} to {@link NativePageCounts}.
+	 */
 	public NativePageCounts parse(InputStream inputStream, String resultFileName, PrintStream logger, String rootDirName)
-			throws TransformerException, IOException {
-		NativePageCounts fitnessePageCounts = new NativePageCounts(logger, resultFileName, rootDirName);
-		SAXResult intermediateResult = new SAXResult(fitnessePageCounts);
-		transformRawResults(inputStream, intermediateResult);
+			throws SAXException, IOException {
+		return parse(inputStream, resultFileName, logger, rootDirName, false);
+	}
+
+	public NativePageCounts parse(InputStream inputStream, String resultFileName, PrintStream logger, String rootDirName,
+			boolean compressContent) throws SAXException, IOException {
+		NativePageCounts fitnessePageCounts = new NativePageCounts(logger, resultFileName, rootDirName, compressContent);
+		return parse(inputStream, fitnessePageCounts);
+	}
+
+	public NativePageCounts parse(InputStream inputStream, String resultFileName, PrintStream logger,
+			ContentPack contentPack, boolean compressContent) throws SAXException, IOException {
+		NativePageCounts fitnessePageCounts = new NativePageCounts(logger, resultFileName, contentPack, compressContent);
+		return parse(inputStream, fitnessePageCounts);
+	}
+
+	private NativePageCounts parse(InputStream inputStream, NativePageCounts fitnessePageCounts) throws SAXException,
+			IOException {
+		SAXParser parser = FitnessePlugin.newRawResultsParser();
+		parser.parse(new InputSource(InputStreamDeBOMer.deBOM(inputStream)), new RawResultsHandler(fitnessePageCounts));
 		return fitnessePageCounts;
 	}
 
@@ -0,0 +1,53 @@
+package hudson.plugins.fitnesse;
+
+import hudson.model.Job;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The page names of a job. The builds of a job run the same pages over and
+ * over, reading their names through the pool of the job keeps a single copy
+ * of every name however many builds are loaded. Names no longer used by any
+ * build are left to the garbage collector.
+ */
+final class PageNamePool {
+	private static final Map<Job<?, ?>, PageNamePool> POOLS = new WeakHashMap<Job<?, ?>, PageNamePool>();
+
+	private final Map<String, WeakReference<String>> names = new WeakHashMap<String, WeakReference<String>>();
+
+	PageNamePool() {
+	}
+
+	static PageNamePool forJob(Job<?, ?> job) {
+		synchronized (POOLS) {
+			PageNamePool pool = POOLS.get(job);
+			if (pool == null) {
+				pool = new PageNamePool();
+				POOLS.put(job, pool);
+			}
+			return pool;
+		}
+	}
+
+	/**
+	 * @return the name equal to the given one already in the pool, or the
+	 *         given name which is added to the pool
+	 */
+	synchronized String intern(String name) {
+		if (name == null)
+			return null;
+		WeakReference<String> reference = names.get(name);
+		String pooled = reference == null ? null : reference.get();
+		if (pooled == null) {
+			names.put(name, new WeakReference<String>(name));
+			return name;
+		}
+		return pooled;
+	}
+
+	synchronized int size() {
+		return names.size();
+	}
+}
@@ -0,0 +1,161 @@
+package hudson.plugins.fitnesse;
+
+import hudson.model.Run;
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Splits the pages of a suite into partitions taking about the same time,
+ * from the durations of the pages in the previous builds: the longest pages
+ * first, each to the partition with the least work so far. The partitions are
+ * written to the partition index file FitNesse reads, one line per page with
+ * its name and partition separated by a tab.
+ */
+final class PartitionBalancer {
+	static final String DEFAULT_INDEX_FILE = "fitnesse-partitions.tsv";
+
+	/** Number of previous builds the durations of the pages are taken from */
+	static final int HISTORY_BUILDS = Integer.getInteger(PartitionBalancer.class.getName() + ".builds", 5);
+
+	private PartitionBalancer() {
+	}
+
+	/**
+	 * @return the average duration in ms of every page in the latest completed
+	 *         builds before the given one having results
+	 */
+	static Map<String, Long> averageDurations(Run<?, ?> build, int builds) {
+		Map<String, long[]> sums = new HashMap<String, long[]>();
+		int found = 0;
+		for (Run<?, ?> b = build.getPreviousCompletedBuild(); b != null && found < builds; b = b
+				.getPreviousCompletedBuild()) {
+			FitnesseResultsAction action = b.getAction(FitnesseResultsAction.class);
+			if (action != null) {
+				addDurations(action.getResult(), sums);
+				found++;
+			}
+		}
+
+		Map<String, Long> durations = new HashMap<String, Long>();
+		for (Map.Entry<String, long[]> sum : sums.entrySet()) {
+			durations.put(sum.getKey(), sum.getValue()[0] / sum.getValue()[1]);
+		}
+		return durations;
+	}
+
+	/**
+	 * Adds the duration of every page of the results to the sums, the total
+	 * duration and number of runs by page.
+	 */
+	static void addDurations(FitnesseResults results, Map<String, long[]> sums) {
+		List<FitnesseResults> children = results.getChildResults();
+		if (!children.isEmpty()) {
+			for (FitnesseResults child : children) {
+				addDurations(child, sums);
+			}
+			return;
+		}
+		Counts counts = results.getPageCounts();
+		if (counts == null || counts.page == null)
+			return;
+		long[] sum = sums.get(counts.page);
+		if (sum == null) {
+			sum = new long[2];
+			sums.put(counts.page, sum);
+		}
+		sum[0] += counts.duration;
+		sum[1]++;
+	}
+
+	/**
+	 * Assigns the pages, the longest first, each to the partition with the
+	 * least work so far.
+	 */
+	static Partitioning partition(Map<String, Long> durations, int partitionCount) {
+		List<Map.Entry<String, Long>> pages = new ArrayList<Map.Entry<String, Long>>(durations.entrySet());
+		Collections.sort(pages, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> page1, Map.Entry<String, Long> page2) {
+				int byDuration = page2.getValue().compareTo(page1.getValue());
+				return byDuration != 0 ? byDuration : page1.getKey().compareTo(page2.getKey());
+			}
+		});
+
+		final long[] loads = new long[partitionCount];
+		PriorityQueue<Integer> leastLoaded = new PriorityQueue<Integer>(partitionCount, new Comparator<Integer>() {
+			public int compare(Integer partition1, Integer partition2) {
+				int byLoad = Long.compare(loads[partition1], loads[partition2]);
+				return byLoad != 0 ? byLoad : partition1.compareTo(partition2);
+			}
+		});
+		for (int partition = 0; partition < partitionCount; partition++) {
+			leastLoaded.add(partition);
+		}
+
+		Map<String, Integer> partitions = new TreeMap<String, Integer>();
+		for (Map.Entry<String, Long> page : pages) {
+			int partition = leastLoaded.poll();
+			partitions.put(page.getKey(), partition);
+			loads[partition] += page.getValue();
+			leastLoaded.add(partition);
+		}
+		return new Partitioning(partitions, loads);
+	}
+
+	/**
+	 * The partition of every page and the predicted duration of every
+	 * partition.
+	 */
+	static final class Partitioning {
+		private final Map<String, Integer> partitions;
+		private final long[] loads;
+
+		Partitioning(Map<String, Integer> partitions, long[] loads) {
+			this.partitions = partitions;
+			this.loads = loads;
+		}
+
+		Integer getPartition(String page) {
+			return partitions.get(page);
+		}
+
+		long getLoad(int partition) {
+			return loads[partition];
+		}
+
+		/**
+		 * @return the predicted duration of the slowest partition
+		 */
+		long getMakespan() {
+			long makespan = 0;
+			for (long load : loads) {
+				makespan = Math.max(makespan, load);
+			}
+			return makespan;
+		}
+
+		/**
+		 * @return the content of the partition index file, sorted by page
+		 */
+		String toIndexFile() {
+			StringBuilder indexFile = new StringBuilder();
+			for (Map.Entry<String, Integer> page : partitions.entrySet()) {
+				indexFile.append(page.getKey()).append('\t').append(page.getValue()).append('\n');
+			}
+			return indexFile.toString();
+		}
+
+		@Override
+		public String toString() {
+			return partitions.size() + " pages, predicted durations " + Arrays.toString(loads) + "ms";
+		}
+	}
+}
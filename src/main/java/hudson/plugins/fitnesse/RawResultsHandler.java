@@ -0,0 +1,185 @@
+package hudson.plugins.fitnesse;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the raw FitNesse results (<tt>testResults</tt>) in a single pass and
+ * hands the summary and the counts of every page over to
+ * {@link NativePageCounts}, exactly like fitnesse-results.xsl does. Only the
+ * values of the current page are kept in memory, so results of any size can
+ * be parsed without building a tree of the whole document.
+ */
+class RawResultsHandler extends DefaultHandler {
+	static final String TEST_RESULTS = "testResults";
+	static final String RESULT = "result";
+
+	private static final String ROOT_PATH = "rootPath";
+	private static final String TOTAL_DURATION = "totalRunTimeInMillis";
+	private static final String FINAL_RIGHT = "finalCounts/right";
+	private static final String FINAL_WRONG = "finalCounts/wrong";
+	private static final String FINAL_IGNORES = "finalCounts/ignores";
+	private static final String FINAL_EXCEPTIONS = "finalCounts/exceptions";
+	private static final Set<String> SUMMARY_VALUES = new HashSet<String>(Arrays.asList(ROOT_PATH,
+			TOTAL_DURATION, FINAL_RIGHT, FINAL_WRONG, FINAL_IGNORES, FINAL_EXCEPTIONS));
+
+	private static final String PAGE_HISTORY_LINK = "pageHistoryLink";
+	private static final String RELATIVE_PAGE_NAME = "relativePageName";
+	private static final String DURATION = "runTimeInMillis";
+	private static final String RIGHT = "counts/right";
+	private static final String WRONG = "counts/wrong";
+	private static final String IGNORES = "counts/ignores";
+	private static final String EXCEPTIONS = "counts/exceptions";
+	private static final String CONTENT = "content";
+	private static final Set<String> RESULT_VALUES = new HashSet<String>(Arrays.asList(PAGE_HISTORY_LINK,
+			RELATIVE_PAGE_NAME, DURATION, RIGHT, WRONG, IGNORES, EXCEPTIONS, CONTENT));
+
+	private static final String RESULT_DATE = "resultDate=";
+
+	private final NativePageCounts pageCounts;
+
+	/** Names of the currently open elements, the root element first */
+	private final List<String> elements = new ArrayList<String>();
+	/** The summary and the pages currently being read, the innermost first */
+	private final Deque<Values> values = new ArrayDeque<Values>();
+
+	private StringBuilder text;
+	private String textPath;
+	private int textDepth;
+
+	RawResultsHandler(NativePageCounts pageCounts) {
+		this.pageCounts = pageCounts;
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) {
+		elements.add(qName);
+		int depth = elements.size();
+
+		if (values.isEmpty()) {
+			if (depth == 1 && TEST_RESULTS.equals(qName))
+				values.push(new Values(depth, SUMMARY_VALUES));
+			return;
+		}
+		if (RESULT.equals(qName)) {
+			values.push(new Values(depth, RESULT_VALUES));
+			return;
+		}
+		if (text == null) {
+			Values current = values.peek();
+			String path = current.pathOf(elements);
+			if (path != null && current.wants(path)) {
+				text = new StringBuilder();
+				textPath = path;
+				textDepth = depth;
+			}
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		if (text != null)
+			text.append(ch, start, length);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) {
+		int depth = elements.size();
+
+		if (text != null && depth == textDepth) {
+			values.peek().put(textPath, text.toString());
+			text = null;
+		}
+		if (!values.isEmpty() && values.peek().depth == depth) {
+			Values ended = values.pop();
+			if (values.isEmpty())
+				addSummary(ended);
+			else
+				addDetail(ended);
+		}
+		elements.remove(depth - 1);
+	}
+
+	private void addSummary(Values summary) {
+		pageCounts.addCounts(NativePageCounts.SUMMARY, summary.get(ROOT_PATH), null, null, summary.get(FINAL_RIGHT),
+				summary.get(FINAL_WRONG), summary.get(FINAL_IGNORES), summary.get(FINAL_EXCEPTIONS),
+				summary.get(TOTAL_DURATION), null);
+	}
+
+	private void addDetail(Values detail) {
+		String pageHistoryLink = detail.get(PAGE_HISTORY_LINK);
+		pageCounts.addCounts(NativePageCounts.DETAIL, substringBefore(pageHistoryLink, "?"),
+				detail.get(RELATIVE_PAGE_NAME), substringAfter(pageHistoryLink, RESULT_DATE), detail.get(RIGHT),
+				detail.get(WRONG), detail.get(IGNORES), detail.get(EXCEPTIONS), detail.get(DURATION),
+				detail.get(CONTENT));
+	}
+
+	/**
+	 * Same as the XPath function: empty if the separator is not found
+	 */
+	static String substringBefore(String string, String separator) {
+		int pos = string.indexOf(separator);
+		return pos == -1 ? "" : string.substring(0, pos);
+	}
+
+	/**
+	 * Same as the XPath function: empty if the separator is not found
+	 */
+	static String substringAfter(String string, String separator) {
+		int pos = string.indexOf(separator);
+		return pos == -1 ? "" : string.substring(pos + separator.length());
+	}
+
+	/**
+	 * The text values collected for the summary or for a single page, keyed by
+	 * their path relative to the element they belong to.
+	 */
+	private static final class Values {
+		private final int depth;
+		private final Set<String> wanted;
+		private final Map<String, String> collected = new HashMap<String, String>();
+
+		Values(int depth, Set<String> wanted) {
+			this.depth = depth;
+			this.wanted = wanted;
+		}
+
+		String pathOf(List<String> elements) {
+			switch (elements.size() - depth) {
+			case 1:
+				return elements.get(depth);
+			case 2:
+				return elements.get(depth) + "/" + elements.get(depth + 1);
+			default:
+				return null;
+			}
+		}
+
+		boolean wants(String path) {
+			// like xsl:value-of, only the first matching element counts
+			return wanted.contains(path) && !collected.containsKey(path);
+		}
+
+		void put(String path, String value) {
+			collected.put(path, value);
+		}
+
+		/**
+		 * @return the collected value, or an empty string like xsl:value-of
+		 */
+		String get(String path) {
+			String value = collected.get(path);
+			return value == null ? "" : value;
+		}
+	}
+}
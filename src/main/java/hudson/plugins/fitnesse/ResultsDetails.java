@@ -6,14 +6,20 @@ import hudson.tasks.test.AbstractTestResultAction;
 import hudson.tasks.test.TestObject;
 import hudson.tasks.test.TestResult;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.zip.GZIPInputStream;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.Exported;
 
 import static java.util.Collections.*;
@@ -26,6 +32,8 @@ public class ResultsDetails extends TestResult {
 
 	private static final long serialVersionUID = 3169974791899027186L;
 
+	private static final long CONTENT_MAX_AGE_SECONDS = 24 * 60 * 60;
+
 	private FitnesseResults parentResults;
 	private String name;
 
@@ -74,36 +82,63 @@ public class ResultsDetails extends TestResult {
 	}
 
 	/**
-	 * referenced from body.jelly Reads the fitnesse-result from file. The
-	 * result is stored on user request in order to keep the memory footprint
-	 * small.
+	 * Streams the stored fitnesse-result of this page, referenced from
+	 * body.jelly. The stored bytes are sent as they are, gzipped ones with a
+	 * matching Content-Encoding when the client accepts it, so the page never
+	 * has to be held in memory. The content of a build never changes, hence
+	 * it may be cached by the browser.
 	 */
-	public String getDetailsHtml() {
-		StringBuffer ret = new StringBuffer();
-		// get the saved filename including its path
-		String fileName = parentResults.getPageCounts().contentFile;
-		if (fileName == null) {
-			return "error, content filename is null for page " + parentResults.getName();
+	public void doContent(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		serveContent(getPageCounts(), req, rsp);
+	}
+
+	static void serveContent(Counts pageCounts, StaplerRequest req, StaplerResponse rsp) throws IOException {
+		String fileName = pageCounts.contentFile;
+		File file = fileName == null ? null : new File(fileName);
+		if (file == null || !file.isFile()) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
 		}
-		BufferedReader br = null;
-		try {
-			br = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), Charset.forName("ISO-8859-1")));
-			String strLine;
-			while ((strLine = br.readLine()) != null) {
-				ret.append(strLine);
-			}
-		} catch (IOException e) {
-			return "exception while reading file: " + fileName + "\n" + e.toString();
-		} finally {
-			if (null != br) {
-				try {
-					br.close();
-				} catch (IOException e) {
-					// think we can ignore this exception ...
-				}
+
+		long lastModified = file.lastModified();
+		long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+		if (ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000) {
+			rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		rsp.setContentType("text/html;charset=ISO-8859-1");
+		rsp.setDateHeader("Last-Modified", lastModified);
+		rsp.setHeader("Cache-Control", "private, max-age=" + CONTENT_MAX_AGE_SECONDS);
+
+		long offset = 0;
+		long length = file.length();
+		boolean gzipped = fileName.endsWith(NativePageCounts.GZIP_EXTENSION);
+		if (pageCounts.isContentPacked()) {
+			offset = pageCounts.contentOffset;
+			length = pageCounts.contentLength;
+			gzipped = ContentPack.isGzipped(fileName, offset);
+		}
+
+		if (gzipped && !acceptsGzip(req)) {
+			InputStream in = pageCounts.isContentPacked() ? ContentPack.open(fileName, offset, (int) length)
+					: new GZIPInputStream(new FileInputStream(file));
+			try {
+				IOUtils.copy(in, rsp.getOutputStream());
+			} finally {
+				in.close();
 			}
+			return;
 		}
-		return ret.toString();
+		if (gzipped) {
+			rsp.setHeader("Content-Encoding", "gzip");
+		}
+		rsp.setHeader("Content-Length", Long.toString(length));
+		ContentPack.transferTo(fileName, offset, length, Channels.newChannel(rsp.getOutputStream()));
+	}
+
+	private static boolean acceptsGzip(StaplerRequest req) {
+		String acceptEncoding = req.getHeader("Accept-Encoding");
+		return acceptEncoding != null && acceptEncoding.contains("gzip");
 	}
 
 	@Override
@@ -0,0 +1,80 @@
+package hudson.plugins.fitnesse;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Parses a results file on the node that holds it. Only the counts are sent
+ * back, the html content of the pages is left in a {@link ContentPack} in a
+ * temporary directory of that node, from where it can be fetched as a
+ * compressed archive with {@link FilePath#copyRecursiveTo(FilePath)}.
+ */
+class ResultsFileParser extends MasterToSlaveFileCallable<ResultsFileParser.ParsedResults> {
+	private static final long serialVersionUID = 1L;
+
+	private final String resultFileName;
+	private final TaskListener listener;
+	private final boolean compressContent;
+
+	ResultsFileParser(String resultFileName, TaskListener listener, boolean compressContent) {
+		this.resultFileName = resultFileName;
+		this.listener = listener;
+		this.compressContent = compressContent;
+	}
+
+	public ParsedResults invoke(File resultsFile, VirtualChannel channel) throws IOException, InterruptedException {
+		File contentDir = Files.createTempDirectory("fitnesse-results").toFile();
+		ContentPack contentPack = new ContentPack(new File(contentDir, ContentPack.FILE_NAME));
+		InputStream resultsInputStream = new FileInputStream(resultsFile);
+		try {
+			NativePageCountsParser pageCountsParser = new NativePageCountsParser();
+			NativePageCounts pageCounts = pageCountsParser.parse(resultsInputStream, resultFileName,
+					listener.getLogger(), contentPack, compressContent);
+			contentPack.close();
+			return new ParsedResults(pageCounts, contentDir.getAbsolutePath());
+		} catch (SAXException e) {
+			contentPack.close();
+			Util.deleteRecursive(contentDir);
+			throw new IOException("Can't parse " + resultsFile, e);
+		} catch (IOException e) {
+			contentPack.close();
+			Util.deleteRecursive(contentDir);
+			throw e;
+		} finally {
+			resultsInputStream.close();
+		}
+	}
+
+	/**
+	 * The counts of a results file and the directory, on the node that parsed
+	 * it, holding the {@link ContentPack} of its pages.
+	 */
+	static final class ParsedResults implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final Counts summary;
+		final List<Counts> details;
+		final String contentDir;
+
+		ParsedResults(NativePageCounts pageCounts, String contentDir) {
+			this.summary = pageCounts.getSummary();
+			this.details = new ArrayList<Counts>(pageCounts.getDetails());
+			this.contentDir = contentDir;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file next to build.xml holding the whole tree of the results of a
+ * build, so that build.xml only keeps their summary, see
+ * {@link FitnesseResultsAction}. Pages kept in a {@link CountsTable} are
+ * written column by column.
+ */
+final class ResultsTreeFile {
+	static final String FILE_NAME = "fitnesse-results.bin";
+
+	private static final int MAGIC = 0x46697452;
+	private static final int VERSION = 1;
+	private static final byte PLAIN = 0;
+	private static final byte COMPOUND = 1;
+
+	private ResultsTreeFile() {
+	}
+
+	/**
+	 * Replaces the file at once, a reader never sees it half written.
+	 */
+	static void write(File file, FitnesseResults results) throws IOException {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeResults(out, results);
+		} finally {
+			out.close();
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	static FitnesseResults read(File file) throws IOException {
+		return read(file, new PageNamePool());
+	}
+
+	/**
+	 * Reads the tree, taking the page names from the given pool so that the
+	 * builds of a job share them.
+	 */
+	static FitnesseResults read(File file, PageNamePool pool) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a FitNesse results file");
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unknown version " + version + " of " + file);
+			return readResults(in, pool);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeResults(DataOutput out, FitnesseResults results) throws IOException {
+		out.writeByte(results instanceof CompoundFitnesseResults ? COMPOUND : PLAIN);
+		writeCounts(out, results.getPageCounts());
+		CountsTable detailTable = results.getDetailTable();
+		out.writeBoolean(detailTable != null);
+		if (detailTable != null)
+			detailTable.writeTo(out);
+		List<FitnesseResults> addedDetails = results.getAddedDetails();
+		out.writeInt(addedDetails.size());
+		for (FitnesseResults detail : addedDetails) {
+			writeResults(out, detail);
+		}
+	}
+
+	private static FitnesseResults readResults(DataInput in, PageNamePool pool) throws IOException {
+		byte kind = in.readByte();
+		Counts pageCounts = readCounts(in, pool);
+		CountsTable detailTable = in.readBoolean() ? CountsTable.readFrom(in, pool) : null;
+		int addedDetailsCount = in.readInt();
+		List<FitnesseResults> addedDetails = new ArrayList<FitnesseResults>(addedDetailsCount);
+		for (int i = 0; i < addedDetailsCount; i++) {
+			addedDetails.add(readResults(in, pool));
+		}
+
+		if (kind == COMPOUND)
+			return new CompoundFitnesseResults(addedDetails, pageCounts);
+		FitnesseResults results = new FitnesseResults(pageCounts, detailTable);
+		for (FitnesseResults detail : addedDetails) {
+			results.addChild(detail);
+		}
+		return results;
+	}
+
+	private static void writeCounts(DataOutput out, Counts counts) throws IOException {
+		out.writeBoolean(counts != null);
+		if (counts == null)
+			return;
+		writeString(out, counts.page);
+		writeString(out, counts.resultsDate);
+		out.writeInt(counts.right);
+		out.writeInt(counts.wrong);
+		out.writeInt(counts.ignored);
+		out.writeInt(counts.exceptions);
+		out.writeInt(counts.duration);
+		writeString(out, counts.contentFile);
+		out.writeBoolean(counts.isContentPacked());
+		if (counts.isContentPacked()) {
+			out.writeLong(counts.contentOffset);
+			out.writeInt(counts.contentLength);
+		}
+	}
+
+	private static Counts readCounts(DataInput in, PageNamePool pool) throws IOException {
+		if (!in.readBoolean())
+			return null;
+		String page = pool.intern(readString(in));
+		String resultsDate = pool.intern(readString(in));
+		int right = in.readInt();
+		int wrong = in.readInt();
+		int ignored = in.readInt();
+		int exceptions = in.readInt();
+		int duration = in.readInt();
+		String contentFile = pool.intern(readString(in));
+		if (!in.readBoolean())
+			return new Counts(page, resultsDate, right, wrong, ignored, exceptions, duration, contentFile);
+		long contentOffset = in.readLong();
+		int contentLength = in.readInt();
+		return new Counts(page, resultsDate, right, wrong, ignored, exceptions, duration, contentFile, contentOffset,
+				contentLength);
+	}
+
+	private static void writeString(DataOutput out, String string) throws IOException {
+		out.writeBoolean(string != null);
+		if (string != null)
+			out.writeUTF(string);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -0,0 +1,125 @@
+package hudson.plugins.fitnesse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentPackTest {
+
+	@Test
+	public void openShouldReadBackEveryAppendedPage() throws Exception {
+		File file = new File("./target/contentPackTest.pack");
+		file.delete();
+		ContentPack pack = new ContentPack(file);
+		byte[] first = "<p>first</p>".getBytes("ISO-8859-1");
+		byte[] second = gzip("<p>second</p>".getBytes("ISO-8859-1"));
+		byte[] third = "<p>third</p>".getBytes("ISO-8859-1");
+		long firstOffset = pack.append(first);
+		long secondOffset = pack.append(second);
+		long thirdOffset = pack.append(third);
+		pack.close();
+
+		Assert.assertEquals(0, firstOffset);
+		Assert.assertEquals("<p>first</p>", read(file, firstOffset, first.length));
+		Assert.assertEquals("<p>second</p>", read(file, secondOffset, second.length));
+		Assert.assertEquals("<p>third</p>", read(file, thirdOffset, third.length));
+	}
+
+	@Test
+	public void packsOfTheSameFileShouldNotMixTheirPages() throws Exception {
+		final File file = new File("./target/contentPackTestShared.pack");
+		file.delete();
+		final long[][] offsets = new long[4][100];
+		Thread[] threads = new Thread[offsets.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int writer = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					ContentPack pack = new ContentPack(file);
+					try {
+						for (int i = 0; i < offsets[writer].length; i++) {
+							offsets[writer][i] = pack.append(page(writer, i).getBytes("ISO-8859-1"));
+						}
+						pack.close();
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (int t = 0; t < offsets.length; t++) {
+			for (int i = 0; i < offsets[t].length; i++) {
+				Assert.assertEquals(page(t, i), read(file, offsets[t][i], page(t, i).length()));
+			}
+		}
+	}
+
+	private static String page(int writer, int i) {
+		return "<p>page " + i + " of writer " + writer + "</p>";
+	}
+
+	@Test
+	public void appendingAnotherPackShouldShiftItsOffsets() throws Exception {
+		File file = new File("./target/contentPackTest.pack");
+		File other = new File("./target/contentPackTestOther.pack");
+		file.delete();
+		other.delete();
+		ContentPack pack = new ContentPack(file);
+		ContentPack otherPack = new ContentPack(other);
+		pack.append("<p>first</p>".getBytes("ISO-8859-1"));
+		long otherOffset = otherPack.append("<p>other</p>".getBytes("ISO-8859-1"));
+		otherPack.close();
+
+		long base = pack.append(other);
+		pack.close();
+
+		Assert.assertEquals("<p>other</p>", read(file, base + otherOffset, "<p>other</p>".length()));
+	}
+
+	@Test
+	public void transferToShouldCopyStoredBytesOfOnePage() throws Exception {
+		File file = new File("./target/contentPackTest.pack");
+		file.delete();
+		ContentPack pack = new ContentPack(file);
+		pack.append("<p>first</p>".getBytes("ISO-8859-1"));
+		byte[] second = gzip("<p>second</p>".getBytes("ISO-8859-1"));
+		long secondOffset = pack.append(second);
+		pack.close();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ContentPack.transferTo(file.getPath(), secondOffset, second.length, Channels.newChannel(out));
+
+		Assert.assertTrue(ContentPack.isGzipped(file.getPath(), secondOffset));
+		Assert.assertFalse(ContentPack.isGzipped(file.getPath(), 0));
+		Assert.assertArrayEquals(second, out.toByteArray());
+	}
+
+	private static byte[] gzip(byte[] bytes) throws Exception {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(compressed);
+		out.write(bytes);
+		out.close();
+		return compressed.toByteArray();
+	}
+
+	private static String read(File file, long offset, int length) throws Exception {
+		InputStream in = ContentPack.open(file.getPath(), offset, length);
+		try {
+			return IOUtils.toString(in, "ISO-8859-1");
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CountsTableTest {
+
+	@Test
+	public void getShouldReturnTheCountsOfEveryRow() {
+		Counts packed = new Counts("SuitePage.PackedPage", "20100320184439", 1, 2, 3, 4, 5, "content.pack",
+				Long.valueOf(1234L), 56);
+		Counts file = new Counts("SuitePage.FilePage", "20100320184440", 6, 7, 8, 9, 10, "FilePage");
+		Counts noContent = new Counts("SuitePage.NoContent", "20100320184439", 0, 0, 0, 0, 0, null);
+
+		CountsTable table = new CountsTable(Arrays.asList(packed, file, noContent));
+
+		Assert.assertEquals(3, table.size());
+		assertSameCounts(packed, table.get(0));
+		assertSameCounts(file, table.get(1));
+		assertSameCounts(noContent, table.get(2));
+		Assert.assertTrue(table.get(0).isContentPacked());
+		Assert.assertFalse(table.get(1).isContentPacked());
+	}
+
+	@Test
+	public void rowsShouldShareTheirStrings() {
+		List<Counts> rows = new ArrayList<Counts>();
+		for (int i = 0; i < 3; i++) {
+			rows.add(new Counts("Page" + i, new String("20100320184439"), 1, 0, 0, 0, 0, new String("content.pack"),
+					Long.valueOf(i), 1));
+		}
+
+		CountsTable table = new CountsTable(rows);
+
+		Assert.assertSame(table.get(0).resultsDate, table.get(2).resultsDate);
+		Assert.assertSame(table.get(0).contentFile, table.get(1).contentFile);
+		Assert.assertEquals("3 pages, 5 strings", table.toString());
+	}
+
+	@Test
+	public void resultsShouldViewOverTheTableOfTheirDetails() {
+		Counts summary = new Counts("Suite", "", 2, 1, 0, 0, 0, null);
+		Counts passed = new Counts("Suite.Passed", "20100320184439", 2, 0, 0, 0, 0, null);
+		Counts failed = new Counts("Suite.Failed", "20100320184439", 0, 1, 0, 0, 0, null);
+
+		FitnesseResults results = new FitnesseResults(summary, Arrays.asList(passed, failed));
+
+		Assert.assertEquals(2, results.getChildResults().size());
+		Assert.assertSame(results.getChildResults(), results.getChildResults());
+		Assert.assertSame(results, results.getChildResults().get(0).getParent());
+		Assert.assertEquals("Suite.Failed", results.getFailedTests().iterator().next().getName());
+		Assert.assertEquals("Suite.Passed", results.getPassedTests().iterator().next().getName());
+	}
+
+	private static void assertSameCounts(Counts expected, Counts actual) {
+		Assert.assertEquals(expected.toString(), actual.toString());
+		Assert.assertEquals(expected.contentFile, actual.contentFile);
+		Assert.assertEquals(expected.contentOffset, actual.contentOffset);
+		Assert.assertEquals(expected.contentLength, actual.contentLength);
+	}
+}
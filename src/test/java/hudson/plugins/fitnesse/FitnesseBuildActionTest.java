@@ -1,9 +1,22 @@
 package hudson.plugins.fitnesse;
 
+import hudson.EnvVars;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 public class FitnesseBuildActionTest {
+	@Test
+	public void buildEnvVarsShouldGiveTheFitnessePort() {
+		EnvVars env = new EnvVars();
+		new FitnesseBuildAction(true, "localhost", 41234).buildEnvVars(null, env);
+		Assert.assertEquals("41234", env.get(FitnesseBuildAction.FITNESSE_PORT_VARIABLE));
+
+		env = new EnvVars();
+		FitnesseBuildAction.NULL_ACTION.buildEnvVars(null, env);
+		Assert.assertNull(env.get(FitnesseBuildAction.FITNESSE_PORT_VARIABLE));
+	}
+
 	@Test
 	public void getLinkForNullActionShouldBePageName() {
 		Assert.assertEquals("pagename", 
@@ -69,6 +69,22 @@ public class FitnesseBuilderTest {
 	}
 
 
+	@Test
+	public void fitnessePortShouldBeAllocatedForAStartedFitnesseWithoutPort() {
+		HashMap<String, String> options = new HashMap<String, String>();
+		FitnesseBuilder builder = new FitnesseBuilder(options);
+		Assert.assertFalse(builder.isAllocatingFitnessePort());
+
+		options.put(FitnesseBuilder.START_FITNESSE, "True");
+		options.put(FitnesseBuilder.FITNESSE_PORT_LOCAL, "");
+		Assert.assertTrue(builder.isAllocatingFitnessePort());
+		Assert.assertEquals("", builder.getFitnessePortLocal());
+
+		options.put(FitnesseBuilder.FITNESSE_PORT_LOCAL, "99");
+		Assert.assertFalse(builder.isAllocatingFitnessePort());
+		Assert.assertEquals("99", builder.getFitnessePortLocal());
+	}
+
     @Test
     public void getSslShouldReturnSslIfSpecified() {
         final HashMap<String, String> options = new HashMap<String, String>();
@@ -144,6 +160,16 @@ public class FitnesseBuilderTest {
 		Assert.assertEquals(1000, builder.getFitnesseTestTimeout());
 	}
 
+	@Test
+	public void getStartupTimeoutShouldReturn30000UnlessValueIsExplicit() {
+		HashMap<String, String> options = new HashMap<String, String>();
+		FitnesseBuilder builder = new FitnesseBuilder(options);
+
+		Assert.assertEquals(30000, builder.getFitnesseStartupTimeout());
+		options.put(FitnesseBuilder.STARTUP_TIMEOUT, "500");
+		Assert.assertEquals(500, builder.getFitnesseStartupTimeout());
+	}
+
 	@Test
 	public void getJavaWorkingDirShouldReturnParentOfFitnessseJarUnlessValueIsExplicit() throws Exception {
 		HashMap<String, String> options = new HashMap<String, String>();
@@ -177,6 +203,21 @@ public class FitnesseBuilderTest {
 		Assert.assertEquals("", builder.getFitnesseJavaWorkingDirectory());
 	}
 
+	@Test
+	public void allPartitionsShouldOnlyRunWhenPartitioningIsEnabled() {
+		HashMap<String, String> options = new HashMap<String, String>();
+		FitnesseBuilder builder = new FitnesseBuilder(options);
+		options.put(FitnesseBuilder.PARTITION_RUN_ALL, "true");
+		options.put(FitnesseBuilder.PARTITION_COUNT, "3");
+		Assert.assertFalse(builder.isRunningAllPartitions());
+
+		options.put(FitnesseBuilder.PARTITION_ENABLED, "true");
+		Assert.assertTrue(builder.isRunningAllPartitions());
+
+		options.put(FitnesseBuilder.PARTITION_COUNT, "1");
+		Assert.assertFalse(builder.isRunningAllPartitions());
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Test
 	public void getFitnesseHostShouldNotThrowANullPointerWhenNodePropertyIsNull() throws InterruptedException,
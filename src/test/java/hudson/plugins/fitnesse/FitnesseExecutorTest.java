@@ -5,6 +5,7 @@ import hudson.FilePath;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.StreamBuildListener;
+import org.apache.commons.io.FileUtils;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Before;
@@ -12,14 +13,24 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class FitnesseExecutorTest {
 
@@ -241,6 +252,27 @@ public class FitnesseExecutorTest {
 		Assert.assertEquals("/WikiPage?suite&format=xml&includehtml&partitionCount=2&partitionIndex=1&partitionIndexFile=Sample.tsv", executor.getFitnessePageCmd());
 	}
 
+	@Test
+	public void fitnessePageCmdShouldReturnTheGivenPartitionIndex() {
+		init(new String[] { FitnesseBuilder.TARGET_PAGE, FitnesseBuilder.TARGET_IS_SUITE, FitnesseBuilder.PARTITION_ENABLED, FitnesseBuilder.PARTITION_COUNT, FitnesseBuilder.PARTITION_INDEX, FitnesseBuilder.PARTITION_RUN_ALL }, new String[] { "WikiPage",
+				"true", "true","3","1","true" });
+		Assert.assertEquals("/WikiPage?suite&format=xml&includehtml&partitionCount=3&partitionIndex=2", executor.getFitnessePageCmd(2));
+	}
+
+	@Test
+	public void fitnessePageCmdShouldReturnThePartitionForATargetWithQueryString() {
+		init(new String[] { FitnesseBuilder.TARGET_PAGE, FitnesseBuilder.TARGET_IS_SUITE, FitnesseBuilder.PARTITION_ENABLED, FitnesseBuilder.PARTITION_COUNT, FitnesseBuilder.PARTITION_RUN_ALL }, new String[] { "WikiPage?suite&suiteFilter=tag1",
+				"true", "true","3","true" });
+		Assert.assertEquals("/WikiPage?suite&suiteFilter=tag1&format=xml&includehtml&partitionCount=3&partitionIndex=1", executor.getFitnessePageCmd(1));
+	}
+
+	@Test
+	public void partitionFileNameShouldInsertThePartitionBeforeTheExtension() {
+		Assert.assertEquals("fitnesse-results.partition-2.xml", FitnesseExecutor.getPartitionFileName("fitnesse-results.xml", "2"));
+		Assert.assertEquals("results.partition-*", FitnesseExecutor.getPartitionFileName("results", "*"));
+		Assert.assertEquals(new FilePath(new File("target", "out.partition-0.xml")), FitnesseExecutor.getPartitionFilePath(new FilePath(new File("target", "out.xml")), 0));
+	}
+
 	@Test
 	public void fitnessePageCmdShouldReturnPartitionDisabledPartitionCountButWithPartitionIndex() {
 		init(new String[] { FitnesseBuilder.TARGET_PAGE, FitnesseBuilder.TARGET_IS_SUITE, FitnesseBuilder.PARTITION_ENABLED, FitnesseBuilder.PARTITION_COUNT, FitnesseBuilder.PARTITION_INDEX }, new String[] { "WikiPage",
@@ -275,6 +307,85 @@ public class FitnesseExecutorTest {
 		Assert.assertTrue(output.toString().contains("Fitnesse server NOT started "));
 	}
 
+	@Test
+	public void fitnesseStartedShouldGiveUpAfterTheStartupTimeout() throws Exception {
+		init(new String[] { FitnesseBuilder.STARTUP_TIMEOUT }, new String[] { "200" });
+
+		long start = System.currentTimeMillis();
+		Assert.assertFalse(executor.isFitnesseStarted(new URL("http://localhost:1/")));
+		Assert.assertThat(System.currentTimeMillis() - start, Matchers.lessThan(5000L));
+		Assert.assertTrue(output.toString().contains("Fitnesse server NOT started "));
+	}
+
+	@Test
+	public void startupWatcherShouldCopyTheOutputAndNoticeTheListeningLine() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CountDownLatch started = new CountDownLatch(1);
+		OutputStream watcher = new FitnesseExecutor.StartupWatcher(out, started);
+
+		watcher.write("FitNesse (v20161106) Started...\n".getBytes());
+		Assert.assertEquals(1, started.getCount());
+		watcher.write("\tport: 8080\n\tlistening on port 8080\n".getBytes());
+		Assert.assertEquals(0, started.getCount());
+		Assert.assertEquals("FitNesse (v20161106) Started...\n\tport: 8080\n\tlistening on port 8080\n", out.toString());
+	}
+
+	@Test
+	public void interruptedReadShouldStopTheTestFromTheSideReadingIt() throws Exception {
+		init(new String[] { FitnesseBuilder.TEST_TIMEOUT }, new String[] { "500" });
+		final CountDownLatch stopped = new CountDownLatch(1);
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/SuitePage", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if ("stoptest&id=42".equals(exchange.getRequestURI().getQuery())) {
+					stopped.countDown();
+					exchange.sendResponseHeaders(200, -1);
+					exchange.close();
+					return;
+				}
+				exchange.getResponseHeaders().add("X-FitNesse-Test-Id", "42");
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream body = exchange.getResponseBody();
+				body.write("<testResults>".getBytes());
+				body.flush();
+				try {
+					Thread.sleep(10 * 1000);
+				} catch (InterruptedException e) {
+					// test over
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		try {
+			File resultsFile = File.createTempFile("results", ".xml");
+			URL url = new URL("http", "localhost", server.getAddress().getPort(), "/SuitePage?suite");
+
+			Assert.assertTrue(executor.readAndWriteFitnesseResults(url, new FilePath(resultsFile)));
+			Assert.assertTrue(stopped.await(5, TimeUnit.SECONDS));
+			Assert.assertTrue(output.toString().contains("Attempting to stop Fitnesse test with id 42"));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void findFreePortShouldGiveAPortThatCanBeListenedOn() throws Exception {
+		int port = FitnesseExecutor.findFreePort();
+		Assert.assertTrue(port > 0);
+		ServerSocket socket = new ServerSocket(port);
+		socket.close();
+	}
+
+	@Test
+	public void fitnessePageShouldUseTheConfiguredPort() throws Exception {
+		init(new String[] { FitnesseBuilder.START_FITNESSE, FitnesseBuilder.FITNESSE_PORT_LOCAL, FitnesseBuilder.TARGET_PAGE },
+				new String[] { "True", "8989", "WikiPage" });
+		Assert.assertEquals(8989, executor.getFitnessePort());
+		Assert.assertEquals(8989, executor.getFitnessePage(null, false).getPort());
+	}
+
 	private boolean resetWasCalled;
 
 	@Test
@@ -295,6 +406,43 @@ public class FitnesseExecutorTest {
 		Assert.assertTrue(resetWasCalled);
 	}
 
+	@Test
+	public void writeFitnesseResultsShouldStreamContentFromUrlToFileAndCallReset() throws Exception {
+		init(new String[] {}, new String[] {});
+		final byte[] content = new byte[256 * 1024];
+		for (int i = 0; i < content.length; ++i) {
+			content[i] = (byte) ('a' + i % 26);
+		}
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/SuitePage", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, content.length);
+				OutputStream body = exchange.getResponseBody();
+				body.write(content);
+				body.close();
+			}
+		});
+		server.start();
+		try {
+			resetWasCalled = false;
+			Resettable resettable = new Resettable() {
+				public void reset() {
+					resetWasCalled = true;
+				}
+			};
+			File resultsFile = File.createTempFile("results", ".xml");
+			URL url = new URL("http", "localhost", server.getAddress().getPort(), "/SuitePage");
+			executor.writeFitnesseResults(url, resettable, 60 * 1000, new FilePath(resultsFile));
+
+			Assert.assertArrayEquals(content, FileUtils.readFileToByteArray(resultsFile));
+			Assert.assertTrue(output.toString().contains("Connection Status: 200/OK"));
+			Assert.assertTrue(output.toString().contains("Xml results saved as "));
+			Assert.assertTrue(resetWasCalled);
+		} finally {
+			server.stop(0);
+		}
+	}
+
 	@Test
 	public void filepathShouldReturnFileAbsolutePathWhenPathIsAbsolute() throws Exception {
 		FilePath workingDirectory = new FilePath(new File(System.getProperty("user.home")));
@@ -0,0 +1,104 @@
+package hudson.plugins.fitnesse;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static hudson.plugins.fitnesse.HistoryFixture.FILE;
+import static hudson.plugins.fitnesse.HistoryFixture.page;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class FitnesseHistoryIndexTest {
+
+	@Test
+	public void indexShouldKeepResultOfEveryPageByBuild() {
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex();
+		index.add(1, build(0, 3));
+		index.add(2, build(3, 3));
+		index.add(5, build(0, 0));
+
+		assertThat(index.getBuilds(), contains(5, 2, 1));
+		assertThat(index.getFiles(), contains(FILE));
+		assertEquals("pass", index.getResult(FILE, "Erratic", 1));
+		assertEquals("fail", index.getResult(FILE, "Erratic", 2));
+		assertEquals("pass", index.getResult(FILE, "Erratic", 5));
+		assertEquals("", index.getResult(FILE, "Erratic", 3));
+		assertEquals("", index.getResult(FILE, "Unknown", 1));
+		assertEquals("fail", index.getResult(FILE, "FailAllTheTime", 5));
+	}
+
+	@Test
+	public void pagesShouldBeOrderedByErraticness() {
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex();
+		index.add(1, build(0, 3));
+		index.add(2, build(3, 3));
+		index.add(3, build(0, 0));
+
+		assertThat(index.getPages(FILE), contains("Erratic", "FailAllTheTime", "PassAllTheTime"));
+	}
+
+	@Test
+	public void pagesShouldBeOrderedOnceUntilABuildIsAdded() {
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex();
+		index.add(1, build(0, 0));
+
+		assertSame(index.getPages(FILE), index.getPages(FILE));
+		List<String> beforeBuild = index.getPages(FILE);
+		index.add(2, build(3, 0));
+		assertNotSame(beforeBuild, index.getPages(FILE));
+		assertThat(index.getPages(FILE), contains("Erratic", "FailAllTheTime", "PassAllTheTime"));
+	}
+
+	@Test
+	public void removedBuildShouldBeForgotten() {
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex();
+		index.add(1, build(0, 0));
+		index.add(2, build(3, 0));
+
+		index.remove(2);
+
+		assertThat(index.getBuilds(), contains(1));
+		assertEquals("", index.getResult(FILE, "Erratic", 2));
+		assertEquals("pass", index.getResult(FILE, "Erratic", 1));
+	}
+
+	@Test
+	public void pageHistoryShouldOnlyHoldTheBuildsOfThePage() {
+		FitnesseHistoryIndex.PageHistory history = new FitnesseHistoryIndex.PageHistory();
+		history.record(50002, false, true);
+		history.record(50000, true, false);
+		history.record(50003, true, false);
+
+		assertEquals(4, history.size());
+		assertEquals("pass", history.resultIn(50000));
+		assertEquals("", history.resultIn(50001));
+		assertEquals("fail", history.resultIn(50002));
+		assertEquals("pass", history.resultIn(50003));
+		assertEquals("", history.resultIn(1));
+
+		history.forget(50000);
+		assertEquals(2, history.size());
+		assertEquals("fail", history.resultIn(50002));
+		assertEquals("", history.resultIn(50000));
+	}
+
+	@Test
+	public void pagesWithoutBuildsShouldBeDropped() {
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex();
+		index.add(1, build(0, 0));
+
+		index.remove(1);
+
+		assertThat(index.getFiles(), empty());
+	}
+
+	/*
+	 * PRIVATE
+	 */
+
+	private static FitnesseResults build(int erraticWrong, int failingWrong) {
+		return HistoryFixture.build(page("PassAllTheTime", 0), page("FailAllTheTime", 5 + failingWrong),
+				page("Erratic", erraticWrong));
+	}
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.fitnesse;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static hudson.plugins.fitnesse.HistoryFixture.FILE;
+import static hudson.plugins.fitnesse.HistoryFixture.build;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class FitnesseHistoryTest {
+
+	@Test
+	public void getResultShouldFindResultOfPageInBuild() {
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex();
+		index.add(1, build(2, 0));
+		index.add(2, build(2, 1));
+
+		FitnesseHistory history = new FitnesseHistory(null, index);
+
+		assertEquals("pass", history.getResult(FILE, "Page1", 1));
+		assertEquals("fail", history.getResult(FILE, "Page1", 2));
+		assertEquals("", history.getResult(FILE, "Page1", 3));
+		assertEquals("", history.getResult(FILE, "Unknown", 1));
+		assertEquals("", history.getResult("UnknownFile", "Page1", 1));
+	}
+
+	@Test
+	public void historyShouldOnlyShowRequestedBuildsAndPages() {
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex();
+		for (int build = 1; build <= 5; build++) {
+			index.add(build, build(30, 0));
+		}
+
+		FitnesseHistory history = new FitnesseHistory(null, index, 1, 2, "page1", 2, 5);
+
+		assertThat(history.getBuilds(), contains(4, 3));
+		assertEquals(5, history.getTotalBuilds());
+		assertTrue(history.hasNewerBuilds());
+		assertTrue(history.hasOlderBuilds());
+		// Page1, Page10 to Page19 match the filter
+		assertEquals(11, history.getMatchingPages(FILE));
+		assertThat(history.getPages(FILE), contains("Page11", "Page12", "Page13", "Page14", "Page15"));
+		assertTrue(history.hasPreviousPages());
+		assertTrue(history.hasNextPages());
+		assertEquals("pass", history.getResult(FILE, "Page11", 4));
+		assertEquals("", history.getResult(FILE, "Page11", 5));
+		assertEquals("?buildOffset=3&builds=2&pageOffset=2&pages=5&filter=page1", history.getOlderBuildsQuery());
+	}
+
+	@Test
+	public void renderingHistoryShouldLookUpTheIndexOncePerFile() {
+		final int[] indexLookups = new int[2];
+		FitnesseHistoryIndex index = new FitnesseHistoryIndex() {
+			@Override
+			public synchronized Map<String, String[]> getResults(String file, List<String> pages, List<Integer> builds) {
+				indexLookups[0]++;
+				return super.getResults(file, pages, builds);
+			}
+
+			@Override
+			public synchronized String getResult(String file, String page, int build) {
+				indexLookups[1]++;
+				return super.getResult(file, page, build);
+			}
+		};
+		int builds = 10;
+		for (int build = 1; build <= builds; build++) {
+			index.add(build, build(50, build % 2));
+		}
+
+		FitnesseHistory history = new FitnesseHistory(null, index);
+		int failures = 0;
+		for (String file : history.getFiles()) {
+			for (String page : history.getPages(file)) {
+				for (Integer build : history.getBuilds()) {
+					if ("fail".equals(history.getResult(file, page, build)))
+						failures++;
+				}
+			}
+		}
+
+		assertEquals(builds / 2, failures);
+		assertEquals(1, indexLookups[0]);
+		assertEquals(0, indexLookups[1]);
+	}
+}
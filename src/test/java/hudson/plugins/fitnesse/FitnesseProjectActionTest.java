@@ -0,0 +1,71 @@
+package hudson.plugins.fitnesse;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.plugins.fitnesse.FitnesseProjectAction.LatestResultsListener;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class FitnesseProjectActionTest {
+	private final Job job = mock(Job.class);
+	private final FitnesseProjectAction projectAction = new FitnesseProjectAction(job);
+
+	private Run build(int number, Run previous, FitnesseResultsAction action) {
+		Run b = mock(Run.class);
+		when(b.getNumber()).thenReturn(number);
+		when(b.getParent()).thenReturn(job);
+		when(b.getPreviousBuild()).thenReturn(previous);
+		when(b.getAction(FitnesseResultsAction.class)).thenReturn(action);
+		when(job.getBuildByNumber(number)).thenReturn(b);
+		when(job.getLastBuild()).thenReturn(b);
+		return b;
+	}
+
+	@Test
+	public void latestResultsShouldBeLookedUpOnceUntilABuildCompletes() {
+		FitnesseResultsAction first = mock(FitnesseResultsAction.class);
+		build(2, build(1, null, first), null);
+
+		assertSame(first, projectAction.getLatestResults());
+		assertSame(first, projectAction.getLatestResults());
+		verify(job, times(1)).getLastBuild();
+
+		FitnesseResultsAction third = mock(FitnesseResultsAction.class);
+		Run completed = build(3, null, third);
+		assertSame(first, projectAction.getLatestResults());
+
+		new LatestResultsListener().onCompleted(completed, null);
+		assertSame(third, projectAction.getLatestResults());
+	}
+
+	@Test
+	public void missingResultsShouldBeRememberedUntilABuildCompletes() {
+		Run last = build(1, null, null);
+		when(job.getLastSuccessfulBuild()).thenReturn(last);
+
+		assertNull(projectAction.getLatestResults());
+		assertNull(projectAction.getLatestResults());
+		verify(job, times(1)).getLastBuild();
+
+		new LatestResultsListener().onCompleted(last, null);
+		assertNull(projectAction.getLatestResults());
+		verify(job, times(2)).getLastBuild();
+	}
+
+	@Test
+	public void deletedBuildShouldNotBeTheLatestResults() {
+		FitnesseResultsAction first = mock(FitnesseResultsAction.class);
+		Run older = build(1, null, first);
+		Run deleted = build(2, older, mock(FitnesseResultsAction.class));
+		projectAction.getLatestResults();
+
+		when(job.getBuildByNumber(2)).thenReturn(null);
+		when(job.getLastBuild()).thenReturn(older);
+		new LatestResultsListener().onDeleted(deleted);
+		assertSame(first, projectAction.getLatestResults());
+	}
+}
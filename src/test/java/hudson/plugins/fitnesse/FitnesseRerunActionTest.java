@@ -0,0 +1,104 @@
+package hudson.plugins.fitnesse;
+
+import hudson.model.Job;
+import hudson.model.Project;
+import hudson.model.Run;
+import hudson.plugins.fitnesse.FitnesseRerunAction.Rerun;
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+import hudson.tasks.Builder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class FitnesseRerunActionTest {
+
+	private static FitnesseRerunAction newAction() {
+		return new FitnesseRerunAction(new HashMap<String, String>(), "", "/workspace");
+	}
+
+	private static Counts page(String name, int right, int wrong) {
+		return new Counts(name, "20100320184439", right, wrong, 0, 0, 10, null);
+	}
+
+	@Test
+	public void onlyFailedPagesOfResultsFilesShouldBeRerunnable() {
+		FitnesseResults first = new FitnesseResults(page("first.xml", 1, 1), Arrays.asList(page("Suite.Passed", 1, 0),
+				page("Suite.Failed", 0, 1)));
+		FitnesseResults second = new FitnesseResults(page("second.xml", 0, 1), Arrays.asList(page("Other.Failed", 0,
+				2)));
+		FitnesseResults all = CompoundFitnesseResults.createFor(Arrays.asList(first, second));
+
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("Suite.Failed", "Other.Failed")),
+				FitnesseRerunAction.getRerunnablePages(all));
+		Assert.assertFalse(first.isRerunnable());
+		Assert.assertFalse(all.isRerunnable());
+		Assert.assertTrue(second.getChildResults().get(0).isRerunnable());
+	}
+
+	@Test
+	public void rerunShouldBeRunningUntilItIsFinished() {
+		FitnesseRerunAction action = newAction();
+		Assert.assertNull(action.getIconFileName());
+
+		Rerun rerun = action.startRerun(new String[] { "Suite.Failed" }, "alice");
+		Assert.assertTrue(action.isRunning());
+		Assert.assertTrue(action.getReruns().get(0).isRunning());
+		Assert.assertNull(action.getReruns().get(0).getPage("Suite.Failed"));
+		Assert.assertNotNull(action.getIconFileName());
+
+		List<Counts> results = Collections.singletonList(page("Suite.Failed", 1, 0));
+		action.finishRerun(rerun, results);
+		Assert.assertFalse(action.isRunning());
+		Assert.assertEquals(1, action.getReruns().get(0).getPage("Suite.Failed").right);
+	}
+
+	@Test
+	public void rerunsShouldBeListedLatestFirst() {
+		FitnesseRerunAction action = newAction();
+		action.startRerun(new String[] { "Suite.A" }, null);
+		action.startRerun(new String[] { "Suite.B" }, null);
+
+		Assert.assertEquals(2, action.getReruns().get(0).getNumber());
+		Assert.assertEquals(1, action.getReruns().get(1).getNumber());
+	}
+
+	@Test
+	public void rerunsRunningWhenJenkinsStoppedShouldBeOverOnLoad() {
+		FitnesseRerunAction action = newAction();
+		action.startRerun(new String[] { "Suite.A" }, null);
+
+		action.onLoad(Mockito.mock(Run.class));
+
+		Assert.assertFalse(action.isRunning());
+		Assert.assertTrue(action.getReruns().get(0).getResults().isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void buildsShouldOnlyBeRerunnableIfThePasswordCanBeTakenFromTheJob() {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(FitnesseBuilder.FITNESSE_USERNAME, "user");
+		options.put(FitnesseBuilder.FITNESSE_PASSWORD, "secret");
+		Run run = Mockito.mock(Run.class);
+		FitnesseRerunAction action = new FitnesseRerunAction(options, "", "/workspace");
+		action.onAttached(run);
+
+		Mockito.when(run.getParent()).thenReturn(Mockito.mock(Job.class));
+		Assert.assertFalse(action.isRerunnable());
+		Assert.assertTrue(newAction().isRerunnable());
+
+		Project project = Mockito.mock(Project.class);
+		Mockito.when(project.getBuilders()).thenReturn(
+				Collections.<Builder> singletonList(new FitnesseBuilder(options)));
+		Mockito.when(run.getParent()).thenReturn(project);
+		Assert.assertTrue(action.isRerunnable());
+	}
+}
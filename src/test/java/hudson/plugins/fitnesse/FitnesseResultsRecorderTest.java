@@ -5,6 +5,7 @@ import hudson.tasks.test.TestResult;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -49,6 +50,22 @@ public class FitnesseResultsRecorderTest {
 		Assert.assertEquals(2, children.size());
 	}
 
+	@Test
+	public void getResultsShouldKeepOrderOfResultFiles() throws Exception {
+		FilePath workspace = new FilePath(new File(System.getProperty("user.dir")));
+		FilePath suiteResults = workspace.child("src/test/resources/hudson/plugins/fitnesse/fitnesse-suite-results.xml");
+		FilePath testResults = workspace.child("src/test/resources/hudson/plugins/fitnesse/fitnesse-test-results.xml");
+		FitnesseResultsRecorder recorder = new FitnesseResultsRecorder("fitnesse-*-results.xml");
+
+		FitnesseResults results = recorder.getResults(System.out, new FilePath[] { suiteResults, testResults, suiteResults },
+				new File("./target"));
+		List<FitnesseResults> children = results.getChildResults();
+		Assert.assertEquals(3, children.size());
+		Assert.assertEquals("fitnesse-suite-results.xml", children.get(0).getName());
+		Assert.assertEquals("TestDecisionTable", children.get(1).getName());
+		Assert.assertEquals("fitnesse-suite-results.xml", children.get(2).getName());
+	}
+
 	@Test
 	public void getNameShouldFilterDangerousCharsForXSS() throws Exception {
 		startPlugin();
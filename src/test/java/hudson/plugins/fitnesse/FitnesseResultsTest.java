@@ -117,6 +117,24 @@ public class FitnesseResultsTest {
 		return summary;
 	}
 
+	@Test
+	public void getDynamicShouldFindChildrenByNameAndId() {
+		FitnesseResults suite = new FitnesseResults(new Counts("Suite", "20100320184439", 2, 0, 0, 0, 0, null));
+		FitnesseResults page1 = new FitnesseResults(new Counts("Page1", "20100320184439", 1, 0, 0, 0, 0, null));
+		FitnesseResults page2 = new FitnesseResults(new Counts("Page2", "20100320184439", 1, 0, 0, 0, 0, "content"));
+		suite.addChild(page1);
+		suite.addChild(page2);
+
+		Assert.assertSame(page2, suite.getDynamic("Page2", null, null));
+		Assert.assertSame(page1, suite.findCorrespondingResult(page1.getId()));
+		Assert.assertNull(suite.getDynamic("Unknown", null, null));
+		Assert.assertTrue(page2.getDynamic("Details", null, null) instanceof ResultsDetails);
+
+		FitnesseResults page3 = new FitnesseResults(new Counts("Page3", "20100320184439", 1, 0, 0, 0, 0, null));
+		suite.addChild(page3);
+		Assert.assertSame(page3, suite.getDynamic("Page3", null, null));
+	}
+
 	private static final Counts BEFORE = new Counts("", "20100313174438", 1, 2, 3, 4, 0, null);
 	private static final Counts AFTER = new Counts("", "20100313174439", 1, 2, 3, 4, 0, null);
 
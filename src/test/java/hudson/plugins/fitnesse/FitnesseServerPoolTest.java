@@ -0,0 +1,134 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.FitnesseServerPool.Lease;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FitnesseServerPoolTest {
+	private static final File WORKING_DIRECTORY = new File(System.getProperty("java.io.tmpdir"));
+
+	/**
+	 * Stands for a FitNesse server.
+	 */
+	public static class Server {
+		public static void main(String[] args) throws InterruptedException {
+			Thread.sleep(60 * 1000);
+		}
+	}
+
+	private static List<String> serverCmd(int port) {
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		return Arrays.asList(java, "-cp", System.getProperty("java.class.path"), Server.class.getName(), "-p",
+				Integer.toString(port));
+	}
+
+	@Test
+	public void keyShouldNotDependOnThePort() {
+		Assert.assertEquals(FitnesseServerPool.getServerKey(serverCmd(8080), "/work"),
+				FitnesseServerPool.getServerKey(serverCmd(9090), "/work"));
+		Assert.assertNotEquals(FitnesseServerPool.getServerKey(serverCmd(8080), "/work"),
+				FitnesseServerPool.getServerKey(serverCmd(8080), "/other"));
+	}
+
+	@Test
+	public void acquireShouldReuseTheServerOfAHealthyBuild() throws Exception {
+		String key = "acquireShouldReuseTheServerOfAHealthyBuild";
+		Lease first = FitnesseServerPool.acquire(key, serverCmd(18080), 18080, WORKING_DIRECTORY);
+		Assert.assertFalse(first.reused);
+		FitnesseServerPool.release(key, true);
+
+		Lease second = FitnesseServerPool.acquire(key, serverCmd(18080), 18080, WORKING_DIRECTORY);
+		Assert.assertTrue(second.reused);
+		Assert.assertEquals(first.log, second.log);
+		FitnesseServerPool.release(key, false);
+
+		Lease third = FitnesseServerPool.acquire(key, serverCmd(18080), 18080, WORKING_DIRECTORY);
+		Assert.assertFalse(third.reused);
+		FitnesseServerPool.release(key, false);
+	}
+
+	@Test
+	public void acquireShouldNotShareAServerUsedOnAnotherPort() throws Exception {
+		String key = "acquireShouldNotShareAServerUsedOnAnotherPort";
+		Lease first = FitnesseServerPool.acquire(key, serverCmd(18081), 18081, WORKING_DIRECTORY);
+		Assert.assertNotNull(first);
+
+		Assert.assertNull(FitnesseServerPool.acquire(key, serverCmd(18082), 18082, WORKING_DIRECTORY));
+		FitnesseServerPool.release(key, false);
+	}
+
+	@Test
+	public void acquireOnAnyPortShouldStartTheServerOnAFreePortAndThenReuseIt() throws Exception {
+		String key = "acquireOnAnyPortShouldStartTheServerOnAFreePortAndThenReuseIt";
+		Lease first = FitnesseServerPool.acquire(key, serverCmd(0), 0, WORKING_DIRECTORY);
+		Assert.assertFalse(first.reused);
+		Assert.assertTrue(first.port > 0);
+		FitnesseServerPool.release(key, true);
+
+		Lease second = FitnesseServerPool.acquire(key, serverCmd(0), 0, WORKING_DIRECTORY);
+		Assert.assertTrue(second.reused);
+		Assert.assertEquals(first.port, second.port);
+		FitnesseServerPool.release(key, false);
+	}
+
+	@Test
+	public void serverOfAFailedBuildShouldBeStoppedOnceNoBuildUsesIt() throws Exception {
+		String key = "serverOfAFailedBuildShouldBeStoppedOnceNoBuildUsesIt";
+		Lease first = FitnesseServerPool.acquire(key, serverCmd(18086), 18086, WORKING_DIRECTORY);
+		Lease second = FitnesseServerPool.acquire(key, serverCmd(18086), 18086, WORKING_DIRECTORY);
+		Assert.assertTrue(second.reused);
+
+		FitnesseServerPool.release(key, false);
+		Assert.assertTrue(new File(first.log).exists());
+		Assert.assertNull(FitnesseServerPool.acquire(key, serverCmd(18086), 18086, WORKING_DIRECTORY));
+
+		FitnesseServerPool.release(key, true);
+		Assert.assertFalse(new File(first.log).exists());
+		Lease third = FitnesseServerPool.acquire(key, serverCmd(18086), 18086, WORKING_DIRECTORY);
+		Assert.assertFalse(third.reused);
+		FitnesseServerPool.release(key, true);
+	}
+
+	@Test
+	public void stoppedServerShouldHaveItsLogDeleted() throws Exception {
+		String key = "stoppedServerShouldHaveItsLogDeleted";
+		Lease lease = FitnesseServerPool.acquire(key, serverCmd(18084), 18084, WORKING_DIRECTORY);
+		Assert.assertTrue(new File(lease.log).exists());
+
+		FitnesseServerPool.release(key, false);
+		Assert.assertFalse(new File(lease.log).exists());
+	}
+
+	@Test
+	public void idleServerShouldBeStoppedInTheBackground() throws Exception {
+		String key = "idleServerShouldBeStoppedInTheBackground";
+		Lease first = FitnesseServerPool.acquire(key, serverCmd(18085), 18085, WORKING_DIRECTORY);
+		FitnesseServerPool.release(key, true);
+		Assert.assertTrue(hasDaemonThread("FitNesse server pool"));
+
+		FitnesseServerPool.stopIdleServers(System.currentTimeMillis() + (FitnesseServerPool.MAX_IDLE_MINUTES + 1)
+				* 60L * 1000L);
+		Assert.assertFalse(new File(first.log).exists());
+		Lease second = FitnesseServerPool.acquire(key, serverCmd(18085), 18085, WORKING_DIRECTORY);
+		Assert.assertFalse(second.reused);
+		FitnesseServerPool.release(key, false);
+	}
+
+	private static boolean hasDaemonThread(String name) {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith(name) && thread.isDaemon())
+				return true;
+		}
+		return false;
+	}
+
+	@Test
+	public void withPortShouldReplaceThePortOption() {
+		Assert.assertEquals(serverCmd(18083), FitnesseServerPool.withPort(serverCmd(0), 18083));
+	}
+}
@@ -0,0 +1,45 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+
+/**
+ * Results of a build as recorded in a {@link FitnesseHistoryIndex}, for the
+ * history tests.
+ */
+final class HistoryFixture {
+	static final String FILE = "Suite";
+
+	private HistoryFixture() {
+	}
+
+	/**
+	 * @return a page with 3 right assertions and the given number of wrong
+	 *         ones
+	 */
+	static Counts page(String name, int wrong) {
+		return new Counts(name, "", 3, wrong, 0, 0, 0, "");
+	}
+
+	/**
+	 * @return the results file {@link #FILE} with the given pages
+	 */
+	static FitnesseResults build(Counts... pages) {
+		FitnesseResults results = new FitnesseResults(new Counts(FILE, "", 0, 0, 0, 0, 0, ""));
+		for (Counts page : pages) {
+			results.addChild(new FitnesseResults(page));
+		}
+		return results;
+	}
+
+	/**
+	 * @return the results file {@link #FILE} with the pages Page0, Page1... of
+	 *         which only Page1 has wrong assertions
+	 */
+	static FitnesseResults build(int pages, int wrong) {
+		Counts[] counts = new Counts[pages];
+		for (int page = 0; page < pages; page++) {
+			counts[page] = page("Page" + page, page == 1 ? wrong : 0);
+		}
+		return build(counts);
+	}
+}
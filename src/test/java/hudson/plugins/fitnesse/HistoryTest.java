@@ -0,0 +1,143 @@
+package hudson.plugins.fitnesse;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.plugins.fitnesse.History.TrendPoint;
+import hudson.plugins.fitnesse.History.TrendSeries;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class HistoryTest {
+	private final Job job = mock(Job.class);
+	private final FitnesseResultsAction action = mock(FitnesseResultsAction.class);
+	private final FitnesseResults testObject = mock(FitnesseResults.class);
+	private final Map<Integer, Run> builds = new HashMap<Integer, Run>();
+
+	private Run build(int number, boolean building) {
+		Run b = mock(Run.class);
+		when(b.getNumber()).thenReturn(number);
+		when(b.getParent()).thenReturn(job);
+		when(b.isBuilding()).thenReturn(building);
+		when(b.getPreviousBuild()).thenReturn(builds.get(number - 1));
+		when(job.getBuildByNumber(number)).thenReturn(b);
+		when(job.getLastBuild()).thenReturn(b);
+		FitnesseResults o = mock(FitnesseResults.class);
+		when(o.getTestResultAction()).thenReturn(action);
+		when(testObject.getResultInRun(b)).thenReturn(o);
+		builds.put(number, b);
+		return b;
+	}
+
+	private static List<Integer> numbers(List<TrendPoint> points) {
+		List<Integer> numbers = new ArrayList<Integer>();
+		for (TrendPoint point : points) {
+			numbers.add(point.number);
+		}
+		return numbers;
+	}
+
+	@Test
+	public void trendShouldListCompletedBuildsLatestFirst() {
+		build(1, false);
+		build(2, true);
+		Run last = build(3, false);
+
+		assertThat(numbers(new TrendSeries().update(last, testObject)), contains(3, 1));
+	}
+
+	@Test
+	public void trendShouldOnlyLoadBuildsCompletedSinceTheLastUpdate() {
+		Run first = build(1, false);
+		TrendSeries series = new TrendSeries();
+		series.update(build(2, false), testObject);
+		Run last = build(3, false);
+
+		assertThat(numbers(series.update(last, testObject)), contains(3, 2, 1));
+		assertThat(numbers(series.update(last, testObject)), contains(3, 2, 1));
+		verify(testObject, times(1)).getResultInRun(first);
+		verify(testObject, times(1)).getResultInRun(last);
+	}
+
+	@Test
+	public void olderBuildCompletingLastShouldBeAddedWithoutANewerBuild() {
+		Run slow = build(1, true);
+		Run last = build(2, false);
+		TrendSeries series = new TrendSeries();
+		assertThat(numbers(series.update(last, testObject)), contains(2));
+
+		when(slow.isBuilding()).thenReturn(false);
+		assertThat(numbers(series.update(last, testObject)), contains(2, 1));
+	}
+
+	@Test
+	public void deletedBuildsShouldBeDroppedFromTheTrend() {
+		build(1, false);
+		build(2, true);
+		Run last = build(3, false);
+		TrendSeries series = new TrendSeries();
+		series.update(last, testObject);
+
+		series.remove(1);
+		series.remove(2);
+		when(job.getBuildByNumber(2)).thenReturn(null);
+		assertThat(numbers(series.update(last, testObject)), contains(3));
+	}
+
+	@Test
+	public void trendsOfDifferentResultsShouldBeKeptSideBySide() {
+		Run first = build(1, false);
+		when(job.getLastCompletedBuild()).thenReturn(build(2, false));
+		when(testObject.getRun()).thenReturn(first);
+		History history = new History(testObject);
+
+		for (String id : new String[] { "all", "file", "all", "file" }) {
+			when(testObject.getId()).thenReturn(id);
+			assertThat(numbers(history.getTrend()), contains(2, 1));
+		}
+		verify(testObject, times(2)).getResultInRun(first);
+	}
+
+	@Test
+	public void trendWithoutCompletedBuildShouldBeEmpty() {
+		build(1, true);
+
+		assertTrue(new TrendSeries().update(null, testObject).isEmpty());
+	}
+
+	@Test
+	public void trendShouldOnlyLoadTheLatestBuilds() {
+		Run last = null;
+		for (int number = 1; number <= History.MAX_DEPTH + 10; number++) {
+			last = build(number, false);
+		}
+		List<Integer> trend = numbers(new TrendSeries().update(last, testObject));
+
+		assertEquals(History.MAX_DEPTH, trend.size());
+		assertEquals(11, trend.get(trend.size() - 1).intValue());
+		verify(testObject, never()).getResultInRun(builds.get(10));
+		verify(builds.get(10), never()).getPreviousBuild();
+	}
+
+	@Test
+	public void listShouldOnlyLoadTheLatestBuilds() {
+		Run last = null;
+		for (int number = 1; number <= History.MAX_DEPTH + 10; number++) {
+			last = build(number, number == History.MAX_DEPTH + 10);
+		}
+		when(testObject.getRun()).thenReturn(last);
+
+		assertEquals(History.MAX_DEPTH - 1, new History(testObject).getList().size());
+		verify(testObject, never()).getResultInRun(last);
+		verify(testObject, never()).getResultInRun(builds.get(10));
+	}
+}
@@ -53,6 +53,36 @@ public class InputStreamDeBOMerTest {
 		assertBomSkipped(stream);
 	}
 
+	@Test
+	public void deBOMShouldKeepShortInput() throws Exception {
+		in = new ByteArrayInputStream(new byte[] { (byte) 0xEF, (byte) 0xBB });
+		InputStream stream = InputStreamDeBOMer.deBOM(in);
+		Assert.assertEquals(0xEF, stream.read());
+		Assert.assertEquals(0xBB, stream.read());
+		Assert.assertEquals(-1, stream.read());
+	}
+
+	@Test
+	public void deBOMShouldNotReadAheadOfBOM() throws Exception {
+		// 1 GB of input that is generated while read, never held in memory
+		final long size = 1024L * 1024L * 1024L;
+		final long[] bytesRead = new long[1];
+		InputStream hugeInput = new InputStream() {
+			@Override
+			public int read() {
+				if (bytesRead[0] >= size)
+					return -1;
+				long position = bytesRead[0]++;
+				return position < InputStreamDeBOMer.UTF8_BOM.length
+						? InputStreamDeBOMer.UTF8_BOM[(int) position] & 0xFF : 'x';
+			}
+		};
+		InputStream stream = InputStreamDeBOMer.deBOM(hugeInput);
+		Assert.assertTrue(bytesRead[0] <= InputStreamDeBOMer.MAX_BOM_LENGTH);
+		Assert.assertEquals('x', stream.read());
+		Assert.assertTrue(bytesRead[0] <= InputStreamDeBOMer.MAX_BOM_LENGTH);
+	}
+
 	private byte[] addBOM(byte[] bom, byte[] tobytes) {
 		byte[] out = new byte[bom.length + tobytes.length];
 		for (int i = 0; i < bom.length; ++i) {
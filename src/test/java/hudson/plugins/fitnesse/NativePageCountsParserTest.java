@@ -1,9 +1,14 @@
 package hudson.plugins.fitnesse;
 
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXResult;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -110,6 +115,29 @@ public class NativePageCountsParserTest {
 		Assert.assertEquals(1, testResults.getSummary().duration);
 	}
 
+	@Test
+	public void parserShouldCollectSameCountsAsXslTransformation() throws Exception {
+		for (String resultsFile : new String[] { "fitnesse-suite-results.xml", "fitnesse-test-results.xml" }) {
+			NativePageCounts transformed = new NativePageCounts(System.out, "testResult.xml", "./target/");
+			fitnesseParser.transformRawResults(getClass().getResourceAsStream(resultsFile),
+					new SAXResult(transformed));
+			NativePageCounts parsed = fitnesseParser.parse(getClass().getResourceAsStream(resultsFile),
+					"testResult.xml", System.out, "./target/");
+
+			Assert.assertEquals(transformed.size(), parsed.size());
+			Assert.assertEquals(transformed.getSummary().toString(), parsed.getSummary().toString());
+			Assert.assertEquals(countsAsStrings(transformed), countsAsStrings(parsed));
+		}
+	}
+
+	private static Set<String> countsAsStrings(NativePageCounts pageCounts) {
+		Set<String> strings = new HashSet<String>();
+		for (Counts counts : pageCounts.getAllCounts()) {
+			strings.add(counts.toString());
+		}
+		return strings;
+	}
+
 	private ByteArrayInputStream toInputStream(String aString) {
 		return toInputStream(aString.getBytes());
 	}
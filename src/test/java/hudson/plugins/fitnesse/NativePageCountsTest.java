@@ -3,11 +3,15 @@ package hudson.plugins.fitnesse;
 import hudson.plugins.fitnesse.NativePageCounts.Counts;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.zip.GZIPInputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.xml.sax.helpers.AttributesImpl;
@@ -101,6 +105,24 @@ public class NativePageCountsTest {
 		Assert.assertEquals("./target/name", results.getDetails().get(0).contentFile);
 	}
 
+	@Test
+	public void resultsShouldWriteGzippedContentWhenCompressed() throws Exception {
+		new File("./target/compressedName.gz").delete();
+		NativePageCounts results = new NativePageCounts(System.out, "testResult.xml", "./target/", true);
+		AttributesImpl attributes = new AttributesImpl();
+		attributes.addAttribute("", "", NativePageCounts.PAGE, "String", "compressedName");
+		addDetailAttributes(attributes, "20100311210804");
+		results.startElement("", "", NativePageCounts.DETAIL, attributes);
+		String contentFile = results.getDetails().get(0).contentFile;
+		Assert.assertEquals("./target/compressedName.gz", contentFile);
+		InputStream in = new GZIPInputStream(new FileInputStream(contentFile));
+		try {
+			Assert.assertEquals("<tr></tr>", IOUtils.toString(in, "ISO-8859-1"));
+		} finally {
+			in.close();
+		}
+	}
+
 	private void addDetailAttributes(AttributesImpl attributes, String resultsDate) {
 		attributes.addAttribute("", "", NativePageCounts.APPROX_RESULT_DATE, "String", resultsDate);
 		attributes.addAttribute("", "", NativePageCounts.RIGHT, "String", "5");
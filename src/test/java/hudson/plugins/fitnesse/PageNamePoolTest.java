@@ -0,0 +1,42 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PageNamePoolTest {
+
+	@Test
+	public void internShouldReturnTheFirstEqualName() {
+		PageNamePool pool = new PageNamePool();
+		String first = new String("Suite.Page");
+		String second = new String("Suite.Page");
+
+		Assert.assertSame(first, pool.intern(first));
+		Assert.assertSame(first, pool.intern(second));
+		Assert.assertSame("Suite.Other", pool.intern("Suite.Other"));
+		Assert.assertNull(pool.intern(null));
+		Assert.assertEquals(2, pool.size());
+	}
+
+	@Test
+	public void buildsReadWithTheSamePoolShouldShareTheirPageNames() throws Exception {
+		FitnesseResults results = new FitnesseResults(new Counts("results.xml", "", 1, 0, 0, 0, 1, null),
+				Arrays.asList(new Counts("Suite.Page", "20100320184439", 1, 0, 0, 0, 1, null)));
+		File file = new File("./target/pageNamePoolTest.bin");
+		ResultsTreeFile.write(file, results);
+
+		PageNamePool pool = new PageNamePool();
+		FitnesseResults firstBuild = ResultsTreeFile.read(file, pool);
+		FitnesseResults secondBuild = ResultsTreeFile.read(file, pool);
+
+		Assert.assertSame(firstBuild.getPageName(), secondBuild.getPageName());
+		Assert.assertSame(firstBuild.getChildResults().get(0).getPageName(), secondBuild.getChildResults().get(0)
+				.getPageName());
+		Assert.assertNotSame(firstBuild.getPageName(), ResultsTreeFile.read(file).getPageName());
+	}
+}
@@ -0,0 +1,63 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+import hudson.plugins.fitnesse.PartitionBalancer.Partitioning;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartitionBalancerTest {
+
+	@Test
+	public void partitionShouldGiveTheLongestPagesToTheLeastLoadedPartition() {
+		Map<String, Long> durations = new HashMap<String, Long>();
+		durations.put("Suite.A", 70L);
+		durations.put("Suite.B", 60L);
+		durations.put("Suite.C", 50L);
+		durations.put("Suite.D", 40L);
+		durations.put("Suite.E", 30L);
+
+		Partitioning partitioning = PartitionBalancer.partition(durations, 2);
+
+		// A to 0, B to 1, C to 1 (60 < 70), D to 0 (70 < 110), E to 0 (first of 110 and 110)
+		Assert.assertEquals(Integer.valueOf(0), partitioning.getPartition("Suite.A"));
+		Assert.assertEquals(Integer.valueOf(1), partitioning.getPartition("Suite.B"));
+		Assert.assertEquals(Integer.valueOf(1), partitioning.getPartition("Suite.C"));
+		Assert.assertEquals(Integer.valueOf(0), partitioning.getPartition("Suite.D"));
+		Assert.assertEquals(Integer.valueOf(0), partitioning.getPartition("Suite.E"));
+		Assert.assertEquals(140, partitioning.getLoad(0));
+		Assert.assertEquals(110, partitioning.getLoad(1));
+		Assert.assertEquals(140, partitioning.getMakespan());
+		Assert.assertEquals("Suite.A\t0\nSuite.B\t1\nSuite.C\t1\nSuite.D\t0\nSuite.E\t0\n", partitioning.toIndexFile());
+	}
+
+	@Test
+	public void partitionShouldLeaveEmptyPartitionsWhenThereAreFewPages() {
+		Map<String, Long> durations = new HashMap<String, Long>();
+		durations.put("Suite.A", 10L);
+
+		Partitioning partitioning = PartitionBalancer.partition(durations, 3);
+
+		Assert.assertEquals(10, partitioning.getMakespan());
+		Assert.assertEquals(0, partitioning.getLoad(2));
+	}
+
+	@Test
+	public void addDurationsShouldSumThePagesOfAllResultsFiles() {
+		FitnesseResults first = new FitnesseResults(new Counts("first.xml", "", 0, 0, 0, 0, 0, null), Arrays.asList(
+				new Counts("Suite.A", "", 1, 0, 0, 0, 100, null), new Counts("Suite.B", "", 1, 0, 0, 0, 20, null)));
+		FitnesseResults second = new FitnesseResults(new Counts("second.xml", "", 0, 0, 0, 0, 0, null),
+				Arrays.asList(new Counts("Suite.A", "", 1, 0, 0, 0, 300, null)));
+		Map<String, long[]> sums = new HashMap<String, long[]>();
+
+		PartitionBalancer.addDurations(CompoundFitnesseResults.createFor(Arrays.asList(first, second)), sums);
+
+		Assert.assertEquals(2, sums.size());
+		Assert.assertArrayEquals(new long[] { 400, 2 }, sums.get("Suite.A"));
+		Assert.assertArrayEquals(new long[] { 20, 1 }, sums.get("Suite.B"));
+	}
+}
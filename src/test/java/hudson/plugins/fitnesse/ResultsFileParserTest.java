@@ -0,0 +1,34 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+import hudson.plugins.fitnesse.ResultsFileParser.ParsedResults;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResultsFileParserTest {
+
+	@Test
+	public void invokeShouldReturnCountsAndWriteContentToTemporaryDirectory() throws Exception {
+		File resultsFile = new File("src/test/resources/hudson/plugins/fitnesse/fitnesse-test-results.xml");
+		ResultsFileParser parser = new ResultsFileParser(resultsFile.getName(), new StreamTaskListener(System.out),
+				false);
+
+		ParsedResults parsed = parser.invoke(resultsFile, null);
+		try {
+			Assert.assertEquals("TestDecisionTable", parsed.summary.page);
+			Assert.assertEquals(16, parsed.summary.right);
+			Assert.assertEquals(1, parsed.details.size());
+			for (Counts detail : parsed.details) {
+				Assert.assertTrue(detail.contentFile.startsWith(parsed.contentDir));
+				Assert.assertTrue(new File(detail.contentFile).exists());
+			}
+		} finally {
+			FileUtils.deleteDirectory(new File(parsed.contentDir));
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package hudson.plugins.fitnesse;
+
+import hudson.plugins.fitnesse.NativePageCounts.Counts;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResultsTreeFileTest {
+
+	@Test
+	public void readShouldReturnTheTreeThatWasWritten() throws Exception {
+		FitnesseResults first = new FitnesseResults(new Counts("first.xml", "", 3, 1, 0, 0, 10, null),
+				Arrays.asList(new Counts("Suite.Passed", "20100320184439", 3, 0, 0, 0, 4, "content.pack", 0L, 12),
+						new Counts("Suite.Failed", "20100320184440", 0, 1, 0, 0, 6, "content.pack", 12L, 20)));
+		FitnesseResults second = new FitnesseResults(new Counts("second.xml", "", 1, 0, 0, 0, 1, null));
+		second.addChild(new FitnesseResults(new Counts("Other.Page", "20100320184441", 1, 0, 0, 0, 1, "Page")));
+		FitnesseResults all = CompoundFitnesseResults.createFor(Arrays.asList(first, second));
+
+		File file = new File("./target/" + ResultsTreeFile.FILE_NAME);
+		ResultsTreeFile.write(file, all);
+		FitnesseResults read = ResultsTreeFile.read(file);
+
+		Assert.assertTrue(read instanceof CompoundFitnesseResults);
+		Assert.assertEquals(all.getHeadlineText(), read.getHeadlineText());
+		List<FitnesseResults> files = read.getChildResults();
+		Assert.assertEquals(2, files.size());
+		Assert.assertEquals("first.xml", files.get(0).getName());
+		Assert.assertNotNull(files.get(0).getDetailTable());
+		Assert.assertEquals(2, files.get(0).getChildResults().size());
+		Counts failed = files.get(0).getChildResults().get(1).getPageCounts();
+		Assert.assertEquals("Suite.Failed", failed.page);
+		Assert.assertEquals(Long.valueOf(12L), failed.contentOffset);
+		Assert.assertEquals(20, failed.contentLength);
+		Assert.assertEquals("Other.Page", files.get(1).getChildResults().get(0).getName());
+		Assert.assertFalse(files.get(1).getChildResults().get(0).getPageCounts().isContentPacked());
+		Assert.assertSame(read, files.get(0).getParent());
+	}
+
+	@Test(expected = java.io.IOException.class)
+	public void readShouldRejectOtherFiles() throws Exception {
+		ResultsTreeFile.read(new File("src/test/resources/hudson/plugins/fitnesse/fitnesse-test-results.xml"));
+	}
+}